@@ -0,0 +1,36 @@
+package com.coupons_management.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+// Reports how requests are executed.
+// Virtual threads are switched on with spring.threads.virtual.enabled (the "virtual" profile),
+// which makes Spring Boot run Tomcat requests and application tasks (the MVC async work behind
+// streaming responses) on virtual threads.
+@Configuration
+public class ExecutionModeConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    private final boolean virtualThreadsRequested;
+    private final int maxPoolSize;
+
+    public ExecutionModeConfig(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsRequested,
+                               @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxPoolSize) {
+        this.virtualThreadsRequested = virtualThreadsRequested;
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportExecutionMode() {
+        if (virtualThreadsRequested) {
+            logger.info("Requests run on virtual threads, database concurrency is bounded by the connection pool ({})", maxPoolSize);
+        } else {
+            logger.info("Requests run on the platform thread pool, connection pool size {}", maxPoolSize);
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package com.coupons_management.Controller;
 
+import com.coupons_management.DTO.BulkImportResult;
+import com.coupons_management.DTO.CouponRanking;
+import com.coupons_management.DTO.CouponStack;
+import com.coupons_management.DTO.CouponSummary;
+import com.coupons_management.DTO.CouponTier;
 import com.coupons_management.Entity.Cart;
 import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
 import com.coupons_management.Exception.CouponNotFoundException;
+import com.coupons_management.Service.CouponBulkService;
+import com.coupons_management.Service.CouponResponseCache;
+import com.coupons_management.Service.CouponResponseCache.SerializedBody;
 import com.coupons_management.Service.CouponService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
@@ -16,10 +34,17 @@ import java.util.List;
 public class CouponController {
 
     private final CouponService couponService;
+    private final CouponBulkService couponBulkService;
+    private final CouponResponseCache couponResponseCache;
+    private final ObjectWriter streamWriter;
     private static final Logger logger = LoggerFactory.getLogger(CouponController.class);
 
-    public CouponController(CouponService couponService) {
+    public CouponController(CouponService couponService, CouponBulkService couponBulkService,
+                            CouponResponseCache couponResponseCache, ObjectMapper objectMapper) {
         this.couponService = couponService;
+        this.couponBulkService = couponBulkService;
+        this.couponResponseCache = couponResponseCache;
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @PostMapping
@@ -29,19 +54,66 @@ public class CouponController {
         return ResponseEntity.ok(newCoupon);
     }
 
+    // Without a page all coupons are returned, with one only that page (ordered by id).
+    // The full list is served pre-serialized with an ETag; a matching If-None-Match gets a 304.
     @GetMapping
-    public ResponseEntity<List<Coupon>> getAllCoupons() {
-        logger.info("Fetching all coupons");
-        List<Coupon> coupons = couponService.getAllCoupons();
+    public ResponseEntity<?> getAllCoupons(@RequestParam(required = false) Integer page,
+                                           @RequestParam(defaultValue = "100") int size) {
+        if (page != null) {
+            logger.info("Fetching coupons page {} of size {}", page, size);
+            return ResponseEntity.ok(couponService.getCouponsPage(page, size));
+        }
+        logger.debug("Fetching all coupons");
+        return serialized(couponResponseCache.getCatalog());
+    }
+
+    private static ResponseEntity<byte[]> serialized(SerializedBody body) {
+        return ResponseEntity.ok()
+                .eTag(body.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body.getBytes());
+    }
+
+    // Bulk import from a JSON array or newline-delimited JSON
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BulkImportResult> importCoupons(InputStream body) throws IOException {
+        logger.info("Importing coupons in bulk");
+        BulkImportResult result = couponBulkService.importCoupons(body);
+        return ResponseEntity.ok(result);
+    }
+
+    // Streaming export of every coupon, newline-delimited JSON unless a JSON array is asked for
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCoupons(@RequestParam(defaultValue = "ndjson") String format) {
+        logger.info("Exporting coupons as {}", format);
+        boolean ndjson = !"json".equalsIgnoreCase(format);
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(output -> couponBulkService.exportCoupons(output, ndjson));
+    }
+
+    @GetMapping("/active")
+    public ResponseEntity<List<Coupon>> getActiveCoupons(@RequestParam(required = false) CouponType type) {
+        logger.info("Fetching active coupons of type: {}", type);
+        List<Coupon> coupons = couponService.getActiveCoupons(type);
         return ResponseEntity.ok(coupons);
     }
 
+    @GetMapping("/summaries")
+    public ResponseEntity<List<CouponSummary>> getCouponSummaries(@RequestParam(defaultValue = "false") boolean activeOnly,
+                                                                  @RequestParam(required = false) CouponType type) {
+        logger.info("Fetching coupon summaries");
+        List<CouponSummary> summaries = couponService.getCouponSummaries(activeOnly, type);
+        return ResponseEntity.ok(summaries);
+    }
+
+    // Served pre-serialized with an ETag, like the full list
     @GetMapping("/{id}")
-    public ResponseEntity<Coupon> getCouponById(@PathVariable Long id) {
-        logger.info("Fetching coupon with id: {}", id);
-        Coupon coupon = couponService.getCouponById(id)
+    public ResponseEntity<byte[]> getCouponById(@PathVariable Long id) {
+        logger.debug("Fetching coupon with id: {}", id);
+        SerializedBody body = couponResponseCache.getCoupon(id)
                 .orElseThrow(() -> new CouponNotFoundException("Coupon not found with id " + id));
-        return ResponseEntity.ok(coupon);
+        return serialized(body);
     }
 
     @PutMapping("/{id}")
@@ -61,16 +133,111 @@ public class CouponController {
     // Endpoint to fetch applicable coupons for a given cart
     @PostMapping("/applicable-coupons")
     public ResponseEntity<List<Coupon>> getApplicableCoupons(@RequestBody Cart cart) {
-        logger.info("Fetching applicable coupons for cart: {}", cart);
+        logger.debug("Fetching applicable coupons for cart: {}", cart);
         List<Coupon> applicableCoupons = couponService.getApplicableCoupons(cart);
         return ResponseEntity.ok(applicableCoupons);
     }
 
+    // Streaming variant for large catalogs: coupons are written as newline-delimited JSON while they are
+    // being matched. With compact=true only the id, type and discount of each coupon are sent.
+    @PostMapping(value = "/applicable-coupons/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamApplicableCoupons(@RequestBody Cart cart,
+                                                                         @RequestParam(defaultValue = "false") boolean compact) {
+        logger.debug("Streaming applicable coupons for cart: {}", cart);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(output -> {
+                    try (JsonGenerator generator = streamWriter.createGenerator(output)) {
+                        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                        NdjsonLines lines = new NdjsonLines(generator);
+                        if (compact) {
+                            couponService.forEachApplicableDiscount(cart, lines::write);
+                        } else {
+                            couponService.forEachApplicableCoupon(cart, lines::write);
+                        }
+                    }
+                });
+    }
+
+    // Endpoint to fetch the ids of the applicable coupons for many carts at once
+    @PostMapping("/applicable-coupons/batch")
+    public ResponseEntity<List<List<Long>>> getApplicableCouponsBatch(@RequestBody List<Cart> carts) {
+        logger.debug("Fetching applicable coupons for a batch of {} carts", carts.size());
+        List<List<Long>> applicableCouponIds = couponService.getApplicableCouponIds(carts);
+        return ResponseEntity.ok(applicableCouponIds);
+    }
+
+    // Endpoint to rank the applicable coupons by the discount they give, without applying them
+    @PostMapping("/best-coupon")
+    public ResponseEntity<CouponRanking> getBestCoupon(@RequestBody Cart cart) {
+        logger.debug("Ranking applicable coupons for cart: {}", cart);
+        CouponRanking ranking = couponService.rankCoupons(cart);
+        return ResponseEntity.ok(ranking);
+    }
+
+    // Endpoint to list the CART_WISE coupons the cart is closest to unlocking
+    @PostMapping("/next-tiers")
+    public ResponseEntity<List<CouponTier>> getNextTiers(@RequestBody Cart cart, @RequestParam(defaultValue = "3") int limit) {
+        logger.debug("Fetching the next {} tiers for cart: {}", limit, cart);
+        List<CouponTier> tiers = couponService.getNextTiers(cart, limit);
+        return ResponseEntity.ok(tiers);
+    }
+
     // Endpoint to apply coupon
     @PostMapping("/apply-coupon/{id}")
     public ResponseEntity<Cart> applyCoupon(@PathVariable Long id, @RequestBody Cart cart) {
-        logger.info("Applying coupon with id: {} to cart: {}", id, cart);
+        logger.debug("Applying coupon with id: {} to cart: {}", id, cart);
         Cart updatedCart = couponService.applyCoupon(id, cart);
         return ResponseEntity.ok(updatedCart);
     }
-}
\ No newline at end of file
+
+    // Endpoint to apply a coupon to a cart and count the redemption against its limits
+    @PostMapping("/redeem-coupon/{id}")
+    public ResponseEntity<Cart> redeemCoupon(@PathVariable Long id, @RequestParam(required = false) String userId,
+                                             @RequestBody Cart cart) {
+        logger.debug("Redeeming coupon with id: {} for user: {}", id, userId);
+        Cart updatedCart = couponService.redeemCoupon(id, userId, cart);
+        return ResponseEntity.ok(updatedCart);
+    }
+
+    // Endpoint to apply several coupons to a cart in the given order
+    @PostMapping("/apply-coupons")
+    public ResponseEntity<Cart> applyCoupons(@RequestParam List<Long> ids, @RequestBody Cart cart) {
+        logger.debug("Applying coupons with ids: {} to cart: {}", ids, cart);
+        Cart updatedCart = couponService.applyCoupons(ids, cart);
+        return ResponseEntity.ok(updatedCart);
+    }
+
+    // Endpoint to find the combination of applicable coupons giving the largest discount
+    @PostMapping("/best-coupons")
+    public ResponseEntity<CouponStack> getBestCoupons(@RequestBody Cart cart) {
+        logger.debug("Finding the best coupon stack for cart: {}", cart);
+        CouponStack stack = couponService.getBestStack(cart);
+        return ResponseEntity.ok(stack);
+    }
+
+    // Writes one JSON value per line. The first line is flushed right away so the client sees it
+    // without waiting for the evaluation; the rest go out whenever the buffers fill up.
+    private final class NdjsonLines {
+
+        private final JsonGenerator generator;
+        private boolean flushed;
+
+        private NdjsonLines(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        void write(Object value) {
+            try {
+                streamWriter.writeValue(generator, value);
+                generator.writeRaw('\n');
+                if (!flushed) {
+                    generator.flush();
+                    flushed = true;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
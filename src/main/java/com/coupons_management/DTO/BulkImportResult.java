@@ -0,0 +1,17 @@
+package com.coupons_management.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Outcome of a bulk coupon import
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkImportResult {
+    private long imported;
+    private long rejected;
+    private List<String> errors; // first rejections, with the position of the row in the input
+}
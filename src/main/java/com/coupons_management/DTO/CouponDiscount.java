@@ -0,0 +1,16 @@
+package com.coupons_management.DTO;
+
+import com.coupons_management.Enum.CouponType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Discount a coupon would give a cart, without the coupon being applied
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponDiscount {
+    private Long couponId;
+    private CouponType type;
+    private double discount;
+}
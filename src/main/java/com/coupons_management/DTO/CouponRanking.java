@@ -0,0 +1,16 @@
+package com.coupons_management.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Applicable coupons of a cart ranked by the discount they give, best first
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponRanking {
+    private CouponDiscount bestCoupon; // null when no coupon applies
+    private List<CouponDiscount> coupons;
+}
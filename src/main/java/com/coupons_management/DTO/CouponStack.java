@@ -0,0 +1,17 @@
+package com.coupons_management.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Coupons used together on a cart, in the order they are applied, with the discount of each
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponStack {
+    private List<CouponDiscount> coupons;
+    private double totalDiscount;
+    private double totalPrice; // cart total once every coupon of the stack is applied
+}
@@ -0,0 +1,18 @@
+package com.coupons_management.DTO;
+
+import com.coupons_management.Enum.CouponType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Coupon without its details, read straight into a DTO so no entity is loaded or dirty-checked
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponSummary {
+    private Long id;
+    private CouponType type;
+    private LocalDateTime expirationDate;
+}
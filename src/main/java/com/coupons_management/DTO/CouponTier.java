@@ -0,0 +1,16 @@
+package com.coupons_management.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A CART_WISE coupon the cart does not reach yet, and how much more it takes to unlock it
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CouponTier {
+    private Long couponId;
+    private double threshold;
+    private double discount; // percentage
+    private double amountToSpend;
+}
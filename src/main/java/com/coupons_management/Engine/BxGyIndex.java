@@ -0,0 +1,139 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Enum.CouponType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Inverted index from product id to the buy slots of the BxGy rules naming it.
+// A cart is matched in one pass over its distinct products: every posting of a product the cart holds
+// enough units of sets the bit of its slot in the rule's mask, and a rule whose mask is full has all
+// of its buy products. Only the rules of products in the cart are touched, and no rule re-reads the cart.
+// Rules with more buy products than a mask has bits are checked one by one.
+final class BxGyIndex {
+
+    private static final int SLOT_BITS = 6;
+    private static final int MAX_SLOTS = 1 << SLOT_BITS; // bits of a long mask
+
+    private final BxGyRule[] rules;
+    private final long[] fullMasks; // mask with the bit of every buy slot set, per rule
+    private final Map<Long, long[]> postings; // product id -> rule index << SLOT_BITS | slot
+    private final Map<Long, List<BxGyRule>> wideRules; // keyed by their first buy product
+
+    private BxGyIndex(BxGyRule[] rules, long[] fullMasks, Map<Long, long[]> postings, Map<Long, List<BxGyRule>> wideRules) {
+        this.rules = rules;
+        this.fullMasks = fullMasks;
+        this.postings = postings;
+        this.wideRules = wideRules;
+    }
+
+    static BxGyIndex of(List<BxGyRule> bxGyRules) {
+        List<BxGyRule> masked = new ArrayList<>(bxGyRules.size());
+        Map<Long, List<BxGyRule>> wide = new HashMap<>();
+        for (BxGyRule rule : bxGyRules) {
+            if (rule.getBuyProductCount() <= MAX_SLOTS) {
+                masked.add(rule);
+            } else {
+                // Every buy product is required, so keying on the first one is enough
+                wide.computeIfAbsent(rule.getBuyProductId(0), k -> new ArrayList<>()).add(rule);
+            }
+        }
+
+        BxGyRule[] rules = masked.toArray(new BxGyRule[0]);
+        long[] fullMasks = new long[rules.length];
+        Map<Long, List<Long>> lists = new HashMap<>();
+        for (int r = 0; r < rules.length; r++) {
+            int slots = rules[r].getBuyProductCount();
+            fullMasks[r] = slots == MAX_SLOTS ? -1L : (1L << slots) - 1;
+            for (int slot = 0; slot < slots; slot++) {
+                lists.computeIfAbsent(rules[r].getBuyProductId(slot), k -> new ArrayList<>())
+                        .add((long) r << SLOT_BITS | slot);
+            }
+        }
+        Map<Long, long[]> postings = new HashMap<>(lists.size() * 2);
+        lists.forEach((productId, list) -> postings.put(productId, list.stream().mapToLong(Long::longValue).toArray()));
+        return new BxGyIndex(rules, fullMasks, postings, wide);
+    }
+
+    boolean isEmpty() {
+        return rules.length == 0 && wideRules.isEmpty();
+    }
+
+    // Hand every BxGy rule the cart satisfies to the consumer, in the order the cart first names them
+    void forEachApplicable(CartView cart, EvaluationStats stats, Consumer<CouponRule> consumer) {
+        if (isEmpty()) {
+            return;
+        }
+        int productCount = cart.getProductCount();
+        long[][] productPostings = new long[productCount][];
+        int postingCount = 0;
+        for (int p = 0; p < productCount; p++) {
+            productPostings[p] = postings.get(cart.getProductId(p));
+            if (productPostings[p] != null) {
+                postingCount += productPostings[p].length;
+            }
+        }
+
+        int scanned = 0;
+        int matched = 0;
+        if (postingCount > 0) {
+            // Masks of the rules touched by the cart, at the position each rule was first touched
+            ProductSlots positions = new ProductSlots(postingCount);
+            int[] touched = new int[postingCount];
+            long[] masks = new long[postingCount];
+            int touchedCount = 0;
+            for (int p = 0; p < productCount; p++) {
+                long[] productPosting = productPostings[p];
+                if (productPosting == null) {
+                    continue;
+                }
+                long units = cart.getQuantity(cart.getProductId(p));
+                for (long posting : productPosting) {
+                    int r = (int) (posting >>> SLOT_BITS);
+                    int slot = (int) (posting & (MAX_SLOTS - 1));
+                    int position = positions.get(r);
+                    if (position < 0) {
+                        position = touchedCount++;
+                        positions.putIfAbsent(r, position);
+                        touched[position] = r;
+                    }
+                    if (units >= rules[r].getBuyUnits(slot)) {
+                        masks[position] |= 1L << slot;
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                BxGyRule rule = rules[touched[i]];
+                if (masks[i] == fullMasks[touched[i]]) {
+                    consumer.accept(rule);
+                    matched++;
+                }
+            }
+            scanned += touchedCount;
+        }
+
+        if (!wideRules.isEmpty()) {
+            for (int p = 0; p < productCount; p++) {
+                List<BxGyRule> wide = wideRules.get(cart.getProductId(p));
+                if (wide == null) {
+                    continue;
+                }
+                for (BxGyRule rule : wide) {
+                    scanned++;
+                    if (rule.matches(cart)) {
+                        consumer.accept(rule);
+                        matched++;
+                    }
+                }
+            }
+        }
+
+        if (stats != null) {
+            stats.scanned(CouponType.BxGy, scanned);
+            stats.matched(CouponType.BxGy, matched);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.CartItem;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+// BxGy: each time the cart holds the buy quantities of all buy products, the get quantities of the
+// get products are discounted, up to the repetition limit. A product that is both bought and given
+// needs its buy and get units for every repetition, so "buy 2 get 1" over 6 units applies twice.
+public final class BxGyRule extends CouponRule {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final long[] buyProductIds;
+    private final long[] buyUnits; // units one repetition takes of each buy product, get units included
+    private final long[] getProductIds;
+    private final int[] getQuantities;
+    private final long[] getReserved; // units of each get product already taken as buy units, per repetition
+    private final long[] getRates; // discount rate per get product
+    private final int repetitionLimit;
+
+    BxGyRule(Coupon coupon, long[] buyProductIds, int[] buyQuantities, long[] getProductIds,
+             int[] getQuantities, double[] getDiscounts, int repetitionLimit) {
+        super(coupon);
+        this.buyProductIds = buyProductIds;
+        this.getProductIds = getProductIds;
+        this.getQuantities = getQuantities;
+        this.repetitionLimit = repetitionLimit;
+
+        buyUnits = new long[buyProductIds.length];
+        for (int i = 0; i < buyProductIds.length; i++) {
+            buyUnits[i] = buyQuantities[i];
+            for (int j = 0; j < getProductIds.length; j++) {
+                if (getProductIds[j] == buyProductIds[i]) {
+                    buyUnits[i] += getQuantities[j];
+                }
+            }
+        }
+        getReserved = new long[getProductIds.length];
+        getRates = new long[getDiscounts.length];
+        for (int i = 0; i < getProductIds.length; i++) {
+            for (int j = 0; j < buyProductIds.length; j++) {
+                if (buyProductIds[j] == getProductIds[i]) {
+                    getReserved[i] += buyQuantities[j];
+                }
+            }
+            getRates[i] = Money.toRate(getDiscounts[i]);
+        }
+    }
+
+    public int getBuyProductCount() {
+        return buyProductIds.length;
+    }
+
+    public long getBuyProductId(int index) {
+        return buyProductIds[index];
+    }
+
+    // Units of the buy product the cart needs for one repetition
+    long getBuyUnits(int index) {
+        return buyUnits[index];
+    }
+
+    public int getGetProductCount() {
+        return getProductIds.length;
+    }
+
+    public long getGetProductId(int index) {
+        return getProductIds[index];
+    }
+
+    @Override
+    public CouponType getType() {
+        return CouponType.BxGy;
+    }
+
+    @Override
+    public boolean matches(CartView cart) {
+        return repetitions(cart) > 0;
+    }
+
+    // How many times the coupon applies to the cart: the smallest number of complete buy quantities
+    // over the buy products, capped by the repetition limit
+    public int repetitions(CartView cart) {
+        long repetitions = repetitionLimit;
+        for (int i = 0; i < buyProductIds.length && repetitions > 0; i++) {
+            repetitions = Math.min(repetitions, cart.getQuantity(buyProductIds[i]) / buyUnits[i]);
+        }
+        return (int) repetitions;
+    }
+
+    // Discount the get quantity of every get product once per repetition, unit by unit over its lines
+    @Override
+    public long apply(CartLedger ledger) {
+        CartView view = ledger.getView();
+        int repetitions = repetitions(view);
+        if (repetitions == 0) {
+            return 0;
+        }
+        long applied = 0;
+        for (int i = 0; i < getProductIds.length; i++) {
+            long units = Math.min((long) repetitions * getQuantities[i],
+                    view.getQuantity(getProductIds[i]) - (long) repetitions * getReserved[i]);
+            for (int line = view.indexOf(getProductIds[i]); line >= 0 && units > 0; line = view.nextLineOf(line)) {
+                CartItem item = view.getItem(line);
+                long lineUnits = Math.min(units, item.getQuantity());
+                if (lineUnits > 0) {
+                    long amount = Math.multiplyExact(Money.toCents(item.getProduct().getPrice()), lineUnits);
+                    applied += ledger.discountLine(line, Money.percentOf(amount, getRates[i]));
+                    units -= lineUnits;
+                }
+            }
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,37 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+
+// Discounts a ledger took off a cart, kept by canonical line so they can be written onto
+// any cart with the same fingerprint, the one they were computed on included
+public final class CartDiscounts {
+
+    private final long[] lineDiscounts; // cents per line, in the canonical order of the fingerprint
+    private final long remainingTotal;
+
+    private CartDiscounts(long[] lineDiscounts, long remainingTotal) {
+        this.lineDiscounts = lineDiscounts;
+        this.remainingTotal = remainingTotal;
+    }
+
+    public static CartDiscounts of(CartLedger ledger, CartFingerprint fingerprint) {
+        long[] lineDiscounts = new long[fingerprint.getLineCount()];
+        for (int i = 0; i < lineDiscounts.length; i++) {
+            lineDiscounts[i] = ledger.getLineDiscount(fingerprint.getLine(i));
+        }
+        return new CartDiscounts(lineDiscounts, ledger.getRemainingTotal());
+    }
+
+    // Same as CartLedger.writeToCart, for a cart with the given fingerprint
+    public Cart writeTo(Cart cart, CartFingerprint fingerprint) {
+        for (int i = 0; i < lineDiscounts.length; i++) {
+            if (lineDiscounts[i] > 0) {
+                CartItem item = cart.getItems().get(fingerprint.getLine(i));
+                item.setTotalDiscount(Money.toAmount(Money.toCents(item.getTotalDiscount()) + lineDiscounts[i]));
+            }
+        }
+        cart.setTotalPrice(Money.toAmount(remainingTotal));
+        return cart;
+    }
+}
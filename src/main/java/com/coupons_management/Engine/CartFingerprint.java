@@ -0,0 +1,88 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Canonical identity of a cart: its lines as (product id, quantity, price, discount) sorted, and its total.
+// Carts posted again with the same content, in any line order, have equal fingerprints. Equality
+// compares the lines themselves, the hash only spreads them, so two different carts never collide.
+public final class CartFingerprint {
+
+    private static final int LINE_WIDTH = 4;
+    private static final long NO_PRODUCT = Long.MIN_VALUE;
+
+    private final long[] lines; // canonical order, LINE_WIDTH values per line
+    private final long totalPrice;
+    private final int[] order; // cart line index of each canonical line, not part of the identity
+    private final int hash;
+
+    private CartFingerprint(long[] lines, long totalPrice, int[] order) {
+        this.lines = lines;
+        this.totalPrice = totalPrice;
+        this.order = order;
+        long h = totalPrice;
+        for (long value : lines) {
+            h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        }
+        hash = (int) (h ^ (h >>> 32));
+    }
+
+    public static CartFingerprint of(Cart cart) {
+        List<CartItem> items = cart.getItems() != null ? cart.getItems() : List.of();
+        int size = items.size();
+        long[] unsorted = new long[size * LINE_WIDTH];
+        for (int i = 0; i < size; i++) {
+            CartItem item = items.get(i);
+            int at = i * LINE_WIDTH;
+            unsorted[at] = item.getProduct() != null ? item.getProduct().getProductId() : NO_PRODUCT;
+            unsorted[at + 1] = item.getQuantity();
+            unsorted[at + 2] = item.getProduct() != null ? bits(item.getProduct().getPrice()) : 0;
+            unsorted[at + 3] = bits(item.getTotalDiscount());
+        }
+
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Arrays.compare(unsorted, a * LINE_WIDTH, (a + 1) * LINE_WIDTH,
+                unsorted, b * LINE_WIDTH, (b + 1) * LINE_WIDTH));
+
+        long[] lines = new long[unsorted.length];
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = sorted[i];
+            System.arraycopy(unsorted, sorted[i] * LINE_WIDTH, lines, i * LINE_WIDTH, LINE_WIDTH);
+        }
+        return new CartFingerprint(lines, bits(cart.getTotalPrice()), order);
+    }
+
+    // Same bits for 0.0 and -0.0
+    private static long bits(double value) {
+        return Double.doubleToLongBits(value + 0.0);
+    }
+
+    public int getLineCount() {
+        return order.length;
+    }
+
+    // Index in the fingerprinted cart of the line at the given canonical position
+    public int getLine(int canonicalIndex) {
+        return order[canonicalIndex];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CartFingerprint fingerprint
+                && hash == fingerprint.hash
+                && totalPrice == fingerprint.totalPrice
+                && Arrays.equals(lines, fingerprint.lines);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,120 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+
+import java.util.Arrays;
+
+// Discounts recorded against a cart in exact cents while coupons are applied.
+// Each discount is taken from what is left of the line or cart, so stacked coupons accumulate
+// and never push an amount below zero. Changes are journaled so a search can try a coupon
+// and roll it back without copying the cart; writeToCart copies the result onto the cart once.
+public final class CartLedger {
+
+    private static final int CART = -1; // journal index of cart-level discounts
+
+    private final CartView view;
+    private final long cartTotal; // cents of the cart's lines, or of its posted total price when it has none
+    private final long[] lineDiscounts; // cents discounted by coupons on each line
+    private long totalDiscount;
+
+    private int[] journalIndexes = new int[8];
+    private long[] journalAmounts = new long[8];
+    private int journalSize;
+
+    private CartLedger(CartView view) {
+        this.view = view;
+        // The total is derived from the lines, a client may omit totalPrice or post a stale one
+        cartTotal = view.getItemCount() > 0 ? view.getTotalCents() : Money.toCents(view.getCart().getTotalPrice());
+        lineDiscounts = new long[view.getItemCount()];
+    }
+
+    public static CartLedger of(CartView view) {
+        return new CartLedger(view);
+    }
+
+    public CartView getView() {
+        return view;
+    }
+
+    // Cents still payable on the line
+    public long getLineAmount(int index) {
+        return view.getSubtotal(index) - lineDiscounts[index];
+    }
+
+    // Cents taken off the line by coupons
+    public long getLineDiscount(int index) {
+        return lineDiscounts[index];
+    }
+
+    // Cents still payable on the cart
+    public long getRemainingTotal() {
+        return Math.max(0, cartTotal - totalDiscount);
+    }
+
+    public long getTotalDiscount() {
+        return totalDiscount;
+    }
+
+    // Take up to the given cents off the line and the cart total, returns the cents taken
+    long discountLine(int index, long cents) {
+        long applied = Math.min(Math.max(0, cents), Math.min(getLineAmount(index), getRemainingTotal()));
+        if (applied > 0) {
+            lineDiscounts[index] += applied;
+            totalDiscount += applied;
+            record(index, applied);
+        }
+        return applied;
+    }
+
+    // Take up to the given cents off the cart total, returns the cents taken
+    long discountCart(long cents) {
+        long applied = Math.min(Math.max(0, cents), getRemainingTotal());
+        if (applied > 0) {
+            totalDiscount += applied;
+            record(CART, applied);
+        }
+        return applied;
+    }
+
+    // Position in the journal to roll back to
+    int mark() {
+        return journalSize;
+    }
+
+    // Undo every discount recorded since the mark
+    void rollback(int mark) {
+        while (journalSize > mark) {
+            journalSize--;
+            int index = journalIndexes[journalSize];
+            long amount = journalAmounts[journalSize];
+            if (index != CART) {
+                lineDiscounts[index] -= amount;
+            }
+            totalDiscount -= amount;
+        }
+    }
+
+    private void record(int index, long amount) {
+        if (journalSize == journalIndexes.length) {
+            journalIndexes = Arrays.copyOf(journalIndexes, journalSize * 2);
+            journalAmounts = Arrays.copyOf(journalAmounts, journalSize * 2);
+        }
+        journalIndexes[journalSize] = index;
+        journalAmounts[journalSize] = amount;
+        journalSize++;
+    }
+
+    // Add the recorded discounts to the item discounts and set the discounted cart total
+    public Cart writeToCart() {
+        Cart cart = view.getCart();
+        for (int i = 0; i < lineDiscounts.length; i++) {
+            if (lineDiscounts[i] > 0) {
+                CartItem item = view.getItem(i);
+                item.setTotalDiscount(Money.toAmount(Money.toCents(item.getTotalDiscount()) + lineDiscounts[i]));
+            }
+        }
+        cart.setTotalPrice(Money.toAmount(getRemainingTotal()));
+        return cart;
+    }
+}
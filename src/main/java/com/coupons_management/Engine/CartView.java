@@ -0,0 +1,121 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Read-only, product-indexed view of a cart, built once per request and shared by every rule evaluated on it.
+// Lines are indexed by product id so a rule finds its item in O(1) instead of scanning the cart,
+// and the line subtotals and cart total are computed once, in exact cents, instead of on every threshold check.
+public final class CartView {
+
+    private final Cart cart;
+    private final CartItem[] items;
+    private final long[] subtotals; // cents of price * quantity - discount per line, never below zero
+    private final int[] quantities; // units per product over all its lines, stored at the line index of its first line
+    private final int[] nextLines; // next line of the same product, or -1
+    private final long[] productIds; // distinct products, in cart order
+    private final ProductSlots slots;
+    private final long totalCents;
+    private final double totalAmount;
+
+    private CartView(Cart cart, List<CartItem> cartItems) {
+        this.cart = cart;
+        int size = cartItems.size();
+        items = cartItems.toArray(new CartItem[0]);
+        subtotals = new long[size];
+        quantities = new int[size];
+        nextLines = new int[size];
+        int[] lastLines = new int[size]; // last line seen per product, at the line index of its first line
+        slots = new ProductSlots(size);
+
+        long[] distinct = new long[size];
+        int productCount = 0;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            CartItem item = items[i];
+            nextLines[i] = -1;
+            if (item.getProduct() == null) {
+                continue;
+            }
+            long gross = Math.multiplyExact(Money.toCents(item.getProduct().getPrice()), item.getQuantity());
+            subtotals[i] = Math.max(0, gross - Money.toCents(item.getTotalDiscount()));
+            total = Math.addExact(total, subtotals[i]);
+
+            long productId = item.getProduct().getProductId();
+            int units = Math.max(0, item.getQuantity());
+            if (slots.putIfAbsent(productId, i)) {
+                distinct[productCount++] = productId;
+                quantities[i] = units;
+                lastLines[i] = i;
+            } else {
+                int first = slots.get(productId);
+                quantities[first] = (int) Math.min(Integer.MAX_VALUE, (long) quantities[first] + units);
+                nextLines[lastLines[first]] = i;
+                lastLines[first] = i;
+            }
+        }
+        productIds = productCount == size ? distinct : Arrays.copyOf(distinct, productCount);
+        totalCents = total;
+        totalAmount = Money.toAmount(total);
+    }
+
+    public static CartView of(Cart cart) {
+        List<CartItem> cartItems = cart.getItems();
+        return new CartView(cart, cartItems != null ? cartItems : List.of());
+    }
+
+    // The cart this view was built from
+    public Cart getCart() {
+        return cart;
+    }
+
+    // Cents of the cart, the sum of the line subtotals
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    // Same as getTotalCents, as an amount for comparing with coupon thresholds
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public int getItemCount() {
+        return items.length;
+    }
+
+    public int getProductCount() {
+        return productIds.length;
+    }
+
+    public long getProductId(int index) {
+        return productIds[index];
+    }
+
+    // Index of the first line holding the product, or -1
+    public int indexOf(long productId) {
+        return slots.get(productId);
+    }
+
+    public CartItem getItem(int index) {
+        return items[index];
+    }
+
+    // Cents payable on the line before any coupon
+    public long getSubtotal(int index) {
+        return subtotals[index];
+    }
+
+    // Next line holding the same product as the given line, or -1
+    public int nextLineOf(int index) {
+        return nextLines[index];
+    }
+
+    // Units of the product in the cart, summed over its lines
+    public int getQuantity(long productId) {
+        int index = slots.get(productId);
+        return index >= 0 ? quantities[index] : 0;
+    }
+}
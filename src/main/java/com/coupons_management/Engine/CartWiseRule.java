@@ -0,0 +1,48 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+// CART_WISE: percentage off the whole cart once its total reaches the threshold
+public final class CartWiseRule extends CouponRule {
+
+    private final double threshold;
+    private final double discount; // percentage
+    private final long rate;
+
+    CartWiseRule(Coupon coupon, double threshold, double discount) {
+        super(coupon);
+        this.threshold = threshold;
+        this.discount = discount;
+        this.rate = Money.toRate(discount);
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    @Override
+    public CouponType getType() {
+        return CouponType.CART_WISE;
+    }
+
+    @Override
+    public boolean matches(CartView cart) {
+        return cart.getTotalAmount() >= threshold;
+    }
+
+    @Override
+    public boolean requiresItems() {
+        return false;
+    }
+
+    // Percentage of what is left of the cart total after the coupons applied before it
+    @Override
+    public long apply(CartLedger ledger) {
+        return ledger.discountCart(Money.percentOf(ledger.getRemainingTotal(), rate));
+    }
+}
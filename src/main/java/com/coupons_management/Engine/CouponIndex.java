@@ -0,0 +1,183 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Immutable lookup structure over the compiled rules of the active coupons.
+// PRODUCT_WISE rules are keyed by product id, BxGy rules are kept in a BxGyIndex and CART_WISE
+// rules in a ThresholdIndex, so a cart only touches the rules that can match it.
+public final class CouponIndex {
+
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private static final CouponIndex EMPTY = fromRules(new ArrayList<>());
+
+    private final long generation;
+    private final ThresholdIndex thresholdIndex;
+    private final Map<Long, List<CouponRule>> productRules;
+    private final BxGyIndex bxGyIndex;
+    private final Map<Long, CouponRule> rulesById;
+    private final List<CouponRule> rules;
+
+    private CouponIndex(ThresholdIndex thresholdIndex, Map<Long, List<CouponRule>> productRules, BxGyIndex bxGyIndex,
+                        Map<Long, CouponRule> rulesById, List<CouponRule> rules) {
+        this.generation = GENERATIONS.incrementAndGet();
+        this.thresholdIndex = thresholdIndex;
+        this.productRules = productRules;
+        this.bxGyIndex = bxGyIndex;
+        this.rulesById = rulesById;
+        this.rules = rules;
+    }
+
+    public static CouponIndex empty() {
+        return EMPTY;
+    }
+
+    // Compile and index the given coupons, skipping the ones already expired at 'now'
+    // and the ones whose details are incomplete for their type
+    public static CouponIndex build(Collection<Coupon> coupons, LocalDateTime now) {
+        List<CouponRule> rules = new ArrayList<>();
+        for (Coupon coupon : coupons) {
+            if (coupon.getExpirationDate() != null && coupon.getExpirationDate().isBefore(now)) {
+                continue;
+            }
+            CouponRule rule = CouponRuleCompiler.compile(coupon);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return fromRules(rules);
+    }
+
+    private static CouponIndex fromRules(List<CouponRule> rules) {
+        List<CartWiseRule> cartWise = new ArrayList<>();
+        Map<Long, List<CouponRule>> byProduct = new HashMap<>();
+        List<BxGyRule> bxGy = new ArrayList<>();
+        Map<Long, CouponRule> byId = new HashMap<>();
+
+        for (CouponRule rule : rules) {
+            if (rule.getCoupon().getId() != null) {
+                byId.put(rule.getCoupon().getId(), rule);
+            }
+            if (rule instanceof CartWiseRule cartWiseRule) {
+                cartWise.add(cartWiseRule);
+            } else if (rule instanceof ProductWiseRule productWiseRule) {
+                byProduct.computeIfAbsent(productWiseRule.getProductId(), k -> new ArrayList<>()).add(rule);
+            } else if (rule instanceof BxGyRule bxGyRule) {
+                bxGy.add(bxGyRule);
+            }
+        }
+
+        return new CouponIndex(ThresholdIndex.of(cartWise), byProduct, BxGyIndex.of(bxGy), byId, Collections.unmodifiableList(rules));
+    }
+
+    // New index without the given rules, this one is left untouched
+    public CouponIndex without(Collection<CouponRule> removed) {
+        Set<CouponRule> removedRules = Collections.newSetFromMap(new IdentityHashMap<>());
+        removedRules.addAll(removed);
+        List<CouponRule> remaining = new ArrayList<>(rules.size());
+        for (CouponRule rule : rules) {
+            if (!removedRules.contains(rule)) {
+                remaining.add(rule);
+            }
+        }
+        return fromRules(remaining);
+    }
+
+    // New index where the coupon with the given id is replaced by the rule, or removed when the rule is null.
+    // The other rules are reused as they are, nothing is reloaded or recompiled.
+    public CouponIndex withRule(Long couponId, CouponRule rule) {
+        CouponRule existing = rulesById.get(couponId);
+        List<CouponRule> updated = new ArrayList<>(rules.size() + 1);
+        for (CouponRule current : rules) {
+            if (current != existing) {
+                updated.add(current);
+            }
+        }
+        if (rule != null) {
+            updated.add(rule);
+        }
+        return fromRules(updated);
+    }
+
+    // Unique number of this index, higher for indexes built later. Every catalog change builds a new
+    // index, so a result computed on an index stays valid as long as its generation is current.
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Rule of the indexed coupon with the given id, or null
+    public CouponRule getRule(Long couponId) {
+        return rulesById.get(couponId);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    // All indexed rules
+    public List<CouponRule> getRules() {
+        return rules;
+    }
+
+    // CART_WISE rules by threshold
+    public ThresholdIndex getThresholdIndex() {
+        return thresholdIndex;
+    }
+
+    // Find the rules of the coupons applicable to the given cart, counting the scanned and matched
+    // rules when stats is not null.
+    // Expired coupons are evicted by CouponCatalog, so no expiration check is needed here.
+    public List<CouponRule> findApplicable(CartView cart, EvaluationStats stats) {
+        List<CouponRule> applicable = new ArrayList<>();
+        forEachApplicable(cart, stats, applicable::add);
+        return applicable;
+    }
+
+    // Hand each applicable rule to the consumer as soon as it matches, without collecting them.
+    // Rules come in the same order as findApplicable returns them.
+    public void forEachApplicable(CartView cart, EvaluationStats stats, Consumer<CouponRule> consumer) {
+        // CART_WISE: every rule up to the last threshold <= total qualifies
+        int qualifying = thresholdIndex.qualifyingCount(cart.getTotalAmount());
+        for (int i = 0; i < qualifying; i++) {
+            consumer.accept(thresholdIndex.getRule(i));
+        }
+        if (stats != null) {
+            stats.scanned(CouponType.CART_WISE, qualifying);
+            stats.matched(CouponType.CART_WISE, qualifying);
+        }
+
+        if (!productRules.isEmpty()) {
+            forEachApplicableProductRule(cart, stats, consumer);
+        }
+        // BxGy: one pass over the cart's products finds every rule whose buy products are all there
+        bxGyIndex.forEachApplicable(cart, stats, consumer);
+    }
+
+    private void forEachApplicableProductRule(CartView cart, EvaluationStats stats, Consumer<CouponRule> consumer) {
+        for (int p = 0; p < cart.getProductCount(); p++) {
+            List<CouponRule> rules = productRules.get(cart.getProductId(p));
+            if (rules == null) {
+                continue;
+            }
+            for (CouponRule rule : rules) {
+                boolean matches = rule.matches(cart);
+                if (matches) {
+                    consumer.accept(rule);
+                }
+                if (stats != null) {
+                    stats.scanned(rule.getType(), 1);
+                    stats.matched(rule.getType(), matches ? 1 : 0);
+                }
+            }
+        }
+    }
+}
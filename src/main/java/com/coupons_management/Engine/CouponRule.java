@@ -0,0 +1,52 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+// A coupon compiled into a typed, immutable rule.
+// Rules are built once by CouponRuleCompiler so matching and applying never read the details map,
+// and they evaluate against a CartView so item lookups never scan the cart.
+public abstract class CouponRule {
+
+    private final Coupon coupon;
+
+    protected CouponRule(Coupon coupon) {
+        this.coupon = coupon;
+    }
+
+    // The coupon this rule was compiled from
+    public Coupon getCoupon() {
+        return coupon;
+    }
+
+    public abstract CouponType getType();
+
+    // Whether the coupon can be applied to the cart
+    public abstract boolean matches(CartView cart);
+
+    // Whether applying the coupon needs the cart items (CART_WISE works on the cart total only)
+    public boolean requiresItems() {
+        return true;
+    }
+
+    // Whether the coupon can only be used on its own
+    public boolean isExclusive() {
+        return coupon.isExclusive();
+    }
+
+    // Coupons sharing a stacking group cannot be combined with each other, null when ungrouped
+    public String getStackingGroup() {
+        return coupon.getStackingGroup();
+    }
+
+    // Cents this coupon would take off the ledger's cart in its current state, the ledger is left unchanged
+    public long discount(CartLedger ledger) {
+        int mark = ledger.mark();
+        long discount = apply(ledger);
+        ledger.rollback(mark);
+        return discount;
+    }
+
+    // Record the discount on the ledger, on top of the discounts already there, and return its cents
+    public abstract long apply(CartLedger ledger);
+}
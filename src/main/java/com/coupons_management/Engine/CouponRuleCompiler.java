@@ -0,0 +1,130 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Exception.InvalidCouponException;
+
+import java.util.List;
+import java.util.Map;
+
+// Compiles a coupon's JSON details into a typed CouponRule
+public final class CouponRuleCompiler {
+
+    private CouponRuleCompiler() {
+    }
+
+    // Compile the coupon, or return null when its type or details are missing or incomplete.
+    // Such coupons are ignored both when listing applicable coupons and when applying them.
+    public static CouponRule compile(Coupon coupon) {
+        if (coupon == null || coupon.getType() == null || coupon.getDetails() == null) {
+            return null;
+        }
+        Map<String, Object> details = coupon.getDetails();
+
+        switch (coupon.getType()) {
+            case CART_WISE: {
+                // Without a threshold the coupon is never advertised, but can still be applied
+                Number threshold = number(details, "threshold");
+                Number discount = number(details, "discount");
+                return new CartWiseRule(coupon,
+                        threshold != null ? threshold.doubleValue() : Double.POSITIVE_INFINITY,
+                        discount != null ? discount.doubleValue() : 0);
+            }
+
+            case PRODUCT_WISE: {
+                Number productId = number(details, "product_id");
+                Number discount = number(details, "discount");
+                if (productId == null || discount == null) {
+                    return null;
+                }
+                return new ProductWiseRule(coupon, productId.longValue(), discount.doubleValue());
+            }
+
+            case BxGy: {
+                List<Map<String, Object>> buyProducts = products(details, "buy_products");
+                List<Map<String, Object>> getProducts = products(details, "get_products");
+                if (buyProducts == null || buyProducts.isEmpty() || getProducts == null) {
+                    return null;
+                }
+
+                long[] buyProductIds = new long[buyProducts.size()];
+                int[] buyQuantities = new int[buyProducts.size()];
+                for (int i = 0; i < buyProducts.size(); i++) {
+                    Number productId = number(buyProducts.get(i), "product_id");
+                    Number quantity = number(buyProducts.get(i), "quantity");
+                    if (productId == null || quantity == null || quantity.intValue() <= 0) {
+                        return null;
+                    }
+                    buyProductIds[i] = productId.longValue();
+                    buyQuantities[i] = quantity.intValue();
+                }
+
+                // Each get product is discounted for one unit per repetition unless it sets a quantity
+                long[] getProductIds = new long[getProducts.size()];
+                int[] getQuantities = new int[getProducts.size()];
+                double[] getDiscounts = new double[getProducts.size()];
+                for (int i = 0; i < getProducts.size(); i++) {
+                    Number productId = number(getProducts.get(i), "product_id");
+                    Number quantity = number(getProducts.get(i), "quantity");
+                    Number discount = number(getProducts.get(i), "discount");
+                    if (productId == null || discount == null || (quantity != null && quantity.intValue() <= 0)) {
+                        return null;
+                    }
+                    getProductIds[i] = productId.longValue();
+                    getQuantities[i] = quantity != null ? quantity.intValue() : 1;
+                    getDiscounts[i] = discount.doubleValue();
+                }
+
+                // Without a repetition limit the coupon applies as many times as the cart allows
+                Number repetitionLimit = number(details, "repetition_limit");
+                if (repetitionLimit != null && repetitionLimit.longValue() <= 0) {
+                    return null;
+                }
+                return new BxGyRule(coupon, buyProductIds, buyQuantities, getProductIds, getQuantities, getDiscounts,
+                        repetitionLimit != null ? (int) Math.min(repetitionLimit.longValue(), BxGyRule.UNLIMITED) : BxGyRule.UNLIMITED);
+            }
+
+            default:
+                return null;
+        }
+    }
+
+    // Reject a coupon whose type or details cannot be compiled into a rule
+    public static void validate(Coupon coupon) {
+        if (coupon == null || coupon.getType() == null) {
+            throw new InvalidCouponException("Coupon type is required");
+        }
+        if (coupon.getDetails() == null) {
+            throw new InvalidCouponException("Coupon details are required");
+        }
+        if (coupon.getType() == CouponType.CART_WISE
+                && (number(coupon.getDetails(), "threshold") == null || number(coupon.getDetails(), "discount") == null)) {
+            throw new InvalidCouponException("CART_WISE coupons need a numeric threshold and discount");
+        }
+        if (compile(coupon) == null) {
+            throw new InvalidCouponException(coupon.getType() + " coupon details are incomplete");
+        }
+    }
+
+    private static Number number(Map<String, Object> details, String key) {
+        if (details == null) {
+            return null;
+        }
+        Object value = details.get(key);
+        return value instanceof Number ? (Number) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> products(Map<String, Object> details, String key) {
+        Object value = details.get(key);
+        if (!(value instanceof List)) {
+            return null;
+        }
+        for (Object product : (List<?>) value) {
+            if (!(product instanceof Map)) {
+                return null;
+            }
+        }
+        return (List<Map<String, Object>>) value;
+    }
+}
@@ -0,0 +1,168 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Exception.InvalidCouponException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Applies several coupons to one cart and finds the combination giving the largest discount.
+// Combinations follow the coupons' stacking rules: an exclusive coupon is used alone and a
+// stacking group contributes at most one coupon. Discounts accumulate on a CartLedger in cents.
+public final class CouponStacker {
+
+    // Search nodes explored before settling for the best stack found so far
+    private static final int NODE_BUDGET = 50_000;
+
+    // Item-level coupons first so cart-level percentages apply to the discounted total,
+    // then the larger discounts, which finds good stacks early and prunes more
+    private static final Comparator<Candidate> SEARCH_ORDER = Comparator
+            .comparing((Candidate candidate) -> !candidate.rule.requiresItems())
+            .thenComparing(candidate -> -candidate.alone)
+            .thenComparing(candidate -> candidate.rule.getCoupon().getId(), Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private CouponStacker() {
+    }
+
+    // Reject coupons that cannot be used together on a cart
+    public static void checkCombinable(List<CouponRule> rules) {
+        Set<Long> couponIds = new HashSet<>();
+        Map<String, Long> groups = new HashMap<>();
+        for (CouponRule rule : rules) {
+            Long couponId = rule.getCoupon().getId();
+            if (!couponIds.add(couponId)) {
+                throw new InvalidCouponException("Coupon " + couponId + " is listed more than once");
+            }
+            if (rule.isExclusive() && rules.size() > 1) {
+                throw new InvalidCouponException("Coupon " + couponId + " is exclusive and cannot be combined with other coupons");
+            }
+            String group = rule.getStackingGroup();
+            if (group != null) {
+                Long other = groups.putIfAbsent(group, couponId);
+                if (other != null) {
+                    throw new InvalidCouponException("Coupons " + other + " and " + couponId + " are both in stacking group " + group);
+                }
+            }
+        }
+    }
+
+    // Apply the rules to the cart in the given order, each on what the previous ones left
+    public static StackResult apply(CartView cart, List<CouponRule> rules) {
+        CartLedger ledger = CartLedger.of(cart);
+        long[] discounts = new long[rules.size()];
+        for (int i = 0; i < discounts.length; i++) {
+            discounts[i] = rules.get(i).apply(ledger);
+        }
+        return new StackResult(ledger, rules, discounts);
+    }
+
+    // Best combination of the candidate rules, which must all match the cart.
+    // Branch and bound over include/exclude decisions: a coupon never takes more once other
+    // discounts are applied, so its discount on the bare cart bounds what the rest can add.
+    public static StackResult findBest(CartView cart, List<CouponRule> candidates) {
+        CartLedger ledger = CartLedger.of(cart);
+        List<Candidate> stackable = new ArrayList<>();
+        Candidate bestExclusive = null;
+        for (CouponRule rule : candidates) {
+            long alone = rule.discount(ledger);
+            if (alone <= 0) {
+                continue;
+            }
+            Candidate candidate = new Candidate(rule, alone);
+            if (!rule.isExclusive()) {
+                stackable.add(candidate);
+            } else if (bestExclusive == null || alone > bestExclusive.alone) {
+                bestExclusive = candidate;
+            }
+        }
+        stackable.sort(SEARCH_ORDER);
+
+        Search search = new Search(ledger, stackable);
+        search.run(0, 0);
+
+        List<CouponRule> chosen = new ArrayList<>();
+        if (bestExclusive != null && bestExclusive.alone > search.best) {
+            chosen.add(bestExclusive.rule);
+        } else {
+            for (int i = 0; i < stackable.size(); i++) {
+                if (search.bestSelected[i]) {
+                    chosen.add(stackable.get(i).rule);
+                }
+            }
+        }
+        return apply(cart, chosen);
+    }
+
+    private record Candidate(CouponRule rule, long alone) {
+    }
+
+    private static final class Search {
+
+        private final CartLedger ledger;
+        private final CouponRule[] rules;
+        private final int[] groups; // stacking group number per rule, -1 when ungrouped
+        private final long[] bounds; // sum of the standalone discounts from each position on
+        private final long cartTotal;
+        private final boolean[] groupUsed;
+        private final boolean[] selected;
+        private final boolean[] bestSelected;
+        private long best;
+        private int nodes;
+
+        Search(CartLedger ledger, List<Candidate> candidates) {
+            this.ledger = ledger;
+            int size = candidates.size();
+            rules = new CouponRule[size];
+            groups = new int[size];
+            bounds = new long[size + 1];
+            Map<String, Integer> groupNumbers = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                rules[i] = candidates.get(i).rule;
+                String group = rules[i].getStackingGroup();
+                groups[i] = group == null ? -1 : groupNumbers.computeIfAbsent(group, k -> groupNumbers.size());
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                bounds[i] = bounds[i + 1] + candidates.get(i).alone;
+            }
+            cartTotal = ledger.getRemainingTotal();
+            groupUsed = new boolean[groupNumbers.size()];
+            selected = new boolean[size];
+            bestSelected = new boolean[size];
+        }
+
+        void run(int position, long discount) {
+            if (discount > best) {
+                best = discount;
+                System.arraycopy(selected, 0, bestSelected, 0, selected.length);
+            }
+            if (position == rules.length || ++nodes > NODE_BUDGET
+                    || Math.min(discount + bounds[position], cartTotal) <= best) {
+                return;
+            }
+
+            // Taking the coupon first makes the first path greedy
+            int group = groups[position];
+            if (group < 0 || !groupUsed[group]) {
+                int mark = ledger.mark();
+                long applied = rules[position].apply(ledger);
+                if (applied > 0) {
+                    selected[position] = true;
+                    if (group >= 0) {
+                        groupUsed[group] = true;
+                    }
+                    run(position + 1, discount + applied);
+                    selected[position] = false;
+                    if (group >= 0) {
+                        groupUsed[group] = false;
+                    }
+                }
+                ledger.rollback(mark);
+            }
+            run(position + 1, discount);
+        }
+    }
+}
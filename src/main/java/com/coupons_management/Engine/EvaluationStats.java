@@ -0,0 +1,26 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Enum.CouponType;
+
+// Per-type counts of the rules a cart evaluation looked at and of the ones that matched
+public final class EvaluationStats {
+
+    private final int[] scanned = new int[CouponType.values().length];
+    private final int[] matched = new int[CouponType.values().length];
+
+    void scanned(CouponType type, int count) {
+        scanned[type.ordinal()] += count;
+    }
+
+    void matched(CouponType type, int count) {
+        matched[type.ordinal()] += count;
+    }
+
+    public int getScanned(CouponType type) {
+        return scanned[type.ordinal()];
+    }
+
+    public int getMatched(CouponType type) {
+        return matched[type.ordinal()];
+    }
+}
@@ -0,0 +1,46 @@
+package com.coupons_management.Engine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Exact money arithmetic for the discount engine.
+// Amounts are whole cents in a long and percentages are rates in millionths (100% = 1_000_000),
+// every division rounds half-even so the same cart always gives the same cents.
+public final class Money {
+
+    public static final long FULL_RATE = 1_000_000;
+
+    private Money() {
+    }
+
+    // Cents of a decimal amount, rounded half-even on its shortest decimal form (0.285 -> 28)
+    public static long toCents(double amount) {
+        return BigDecimal.valueOf(amount).movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    public static double toAmount(long cents) {
+        return BigDecimal.valueOf(cents, 2).doubleValue();
+    }
+
+    // Rate in millionths of a percentage, negative percentages give no discount
+    public static long toRate(double percentage) {
+        if (!(percentage > 0)) {
+            return 0;
+        }
+        return Math.min(FULL_RATE, Math.round(percentage * 10_000));
+    }
+
+    // The given rate of an amount in cents, rounded half-even
+    public static long percentOf(long cents, long rate) {
+        return divideHalfEven(Math.multiplyExact(cents, rate), FULL_RATE);
+    }
+
+    private static long divideHalfEven(long dividend, long divisor) {
+        long quotient = Math.floorDiv(dividend, divisor);
+        long twiceRemainder = 2 * Math.floorMod(dividend, divisor);
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) == 1)) {
+            quotient++;
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,51 @@
+package com.coupons_management.Engine;
+
+// Open-addressing map from product id to a cart line index, without boxing
+// (BxGyIndex also uses it from rule index to mask position).
+// Sized once for the number of lines, it is never resized or removed from.
+final class ProductSlots {
+
+    private static final int MISSING = -1;
+
+    private final long[] keys;
+    private final int[] values; // line index + 1, 0 marks an empty slot
+    private final int mask;
+
+    ProductSlots(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1; // load factor <= 0.5
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    // Line index of the product, or -1
+    int get(long productId) {
+        int slot = slot(productId);
+        while (values[slot] != 0) {
+            if (keys[slot] == productId) {
+                return values[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    // Map the product to the line index unless it is already mapped, returns whether it was added
+    boolean putIfAbsent(long productId, int index) {
+        int slot = slot(productId);
+        while (values[slot] != 0) {
+            if (keys[slot] == productId) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = productId;
+        values[slot] = index + 1;
+        return true;
+    }
+
+    private int slot(long productId) {
+        long hash = productId * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential ids
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
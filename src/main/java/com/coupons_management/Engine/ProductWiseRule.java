@@ -0,0 +1,43 @@
+package com.coupons_management.Engine;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+// PRODUCT_WISE: percentage off one product of the cart
+public final class ProductWiseRule extends CouponRule {
+
+    private final long productId;
+    private final double discount; // percentage
+    private final long rate;
+
+    ProductWiseRule(Coupon coupon, long productId, double discount) {
+        super(coupon);
+        this.productId = productId;
+        this.discount = discount;
+        this.rate = Money.toRate(discount);
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public double getDiscount() {
+        return discount;
+    }
+
+    @Override
+    public CouponType getType() {
+        return CouponType.PRODUCT_WISE;
+    }
+
+    @Override
+    public boolean matches(CartView cart) {
+        return cart.indexOf(productId) >= 0;
+    }
+
+    @Override
+    public long apply(CartLedger ledger) {
+        int index = ledger.getView().indexOf(productId);
+        return index >= 0 ? ledger.discountLine(index, Money.percentOf(ledger.getLineAmount(index), rate)) : 0;
+    }
+}
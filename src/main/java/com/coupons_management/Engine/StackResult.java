@@ -0,0 +1,34 @@
+package com.coupons_management.Engine;
+
+import java.util.List;
+
+// Coupons applied together on a cart, in application order, with the cents each one took off
+public final class StackResult {
+
+    private final CartLedger ledger;
+    private final List<CouponRule> rules;
+    private final long[] discounts; // aligned with rules
+
+    StackResult(CartLedger ledger, List<CouponRule> rules, long[] discounts) {
+        this.ledger = ledger;
+        this.rules = rules;
+        this.discounts = discounts;
+    }
+
+    // Ledger holding the discounts, writeToCart() applies them to the cart
+    public CartLedger getLedger() {
+        return ledger;
+    }
+
+    public List<CouponRule> getRules() {
+        return rules;
+    }
+
+    public long getDiscount(int index) {
+        return discounts[index];
+    }
+
+    public long getTotalDiscount() {
+        return ledger.getTotalDiscount();
+    }
+}
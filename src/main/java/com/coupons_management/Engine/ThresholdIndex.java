@@ -0,0 +1,65 @@
+package com.coupons_management.Engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// CART_WISE rules sorted by threshold in a primitive array.
+// One binary search over the thresholds gives both the rules a cart total qualifies for
+// (every rule before the position) and the tiers it has not reached yet (the ones after it).
+public final class ThresholdIndex {
+
+    private final double[] thresholds; // ascending
+    private final CartWiseRule[] rules; // aligned with thresholds
+
+    private ThresholdIndex(double[] thresholds, CartWiseRule[] rules) {
+        this.thresholds = thresholds;
+        this.rules = rules;
+    }
+
+    static ThresholdIndex of(List<CartWiseRule> cartWiseRules) {
+        List<CartWiseRule> sorted = new ArrayList<>(cartWiseRules);
+        sorted.sort(Comparator.comparingDouble(CartWiseRule::getThreshold));
+        double[] thresholds = new double[sorted.size()];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = sorted.get(i).getThreshold();
+        }
+        return new ThresholdIndex(thresholds, sorted.toArray(new CartWiseRule[0]));
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public CartWiseRule getRule(int index) {
+        return rules[index];
+    }
+
+    // Number of rules whose threshold the total reaches, they are the first ones in threshold order
+    public int qualifyingCount(double total) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] <= total) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Up to 'limit' rules the total does not reach yet, closest threshold first.
+    // Rules without a threshold are never advertised and are left out.
+    public List<CartWiseRule> nextTiers(double total, int limit) {
+        List<CartWiseRule> tiers = new ArrayList<>(Math.min(limit, rules.length));
+        for (int i = qualifyingCount(total); i < rules.length && tiers.size() < limit; i++) {
+            if (thresholds[i] == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            tiers.add(rules[i]);
+        }
+        return tiers;
+    }
+}
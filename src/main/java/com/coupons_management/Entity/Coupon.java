@@ -1,7 +1,10 @@
 package com.coupons_management.Entity;
 
 import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Service.BinaryDetailsConverter;
 import com.coupons_management.Service.JsonConverter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -12,21 +15,88 @@ import java.util.Map;
 @Entity
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "coupons")
+@Table(name = "coupons", indexes = {
+        @Index(name = "idx_coupons_type_expiration", columnList = "type, expiration_date"),
+        @Index(name = "idx_coupons_expiration", columnList = "expiration_date")
+})
 public class Coupon {
+    public static final String ID_SEQUENCE = "coupons_seq";
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Pooled sequence ids (a table-backed sequence on MySQL) so inserts can be JDBC-batched.
+    // CouponIdSequence moves the sequence past ids written before it existed.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     @Enumerated(EnumType.STRING)
     private CouponType type;
 
-    // Getter for details
-    @Getter
-    @Convert(converter = JsonConverter.class)
-    @Column(columnDefinition = "TEXT")
+    // Stored in the compact binary layout of DetailsCodec
+    @Convert(converter = BinaryDetailsConverter.class)
+    @Column(name = "details_bin", columnDefinition = "BLOB")
     private Map<String, Object> details; // updated from Object to Map<String, Object>
 
+    // JSON text of rows written before details_bin existed, only read until
+    // CouponDetailsMigration has moved them to the binary column
+    @JsonIgnore
+    @Column(name = "details", columnDefinition = "TEXT")
+    private String legacyDetails;
+
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, Object> parsedLegacyDetails;
+
     private LocalDateTime expirationDate;
 
+    // Stacking rules: an exclusive coupon is never combined with another one,
+    // and at most one coupon of a stacking group is used on the same cart
+    private boolean exclusive;
+
+    private String stackingGroup;
+
+    // Redemption limits, null when unlimited
+    private Integer maxRedemptions;
+
+    private Integer maxRedemptionsPerUser;
+
+    // Redemptions so far. Counted in memory and written only by the redemption flush,
+    // never by saving the entity, so it cannot be set through the API either.
+    @Column(updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long redemptionCount;
+
+    // Optimistic lock, incremented on every update
+    @Version
+    private Long version;
+
+    private static final JsonConverter legacyConverter = new JsonConverter();
+
+    // Getter for details, falling back to the JSON of a row not migrated yet, parsed on first access
+    // and kept by this entity. The parsed form is not a column, so it is never written back.
+    public Map<String, Object> getDetails() {
+        if (details == null && legacyDetails != null) {
+            if (parsedLegacyDetails == null) {
+                parsedLegacyDetails = legacyConverter.convertToEntityAttribute(legacyDetails);
+            }
+            return parsedLegacyDetails;
+        }
+        return details;
+    }
+
+    // Details are always written in the binary form
+    public void setDetails(Map<String, Object> details) {
+        this.details = details;
+        this.legacyDetails = null;
+        this.parsedLegacyDetails = null;
+    }
+
+    public void setLegacyDetails(String legacyDetails) {
+        this.legacyDetails = legacyDetails;
+        this.parsedLegacyDetails = null;
+    }
+
 }
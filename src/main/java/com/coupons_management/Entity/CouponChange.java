@@ -0,0 +1,33 @@
+package com.coupons_management.Entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One committed coupon write, read by the other instances to bring their catalog up to date.
+// Written in the same transaction as the coupon, so a change is logged exactly when it commits.
+@Data
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "coupon_changes", indexes = @Index(name = "idx_coupon_changes_changed_at", columnList = "changed_at"))
+public class CouponChange {
+
+    // Identity rather than a pooled sequence: ids handed out in blocks per instance
+    // would not follow the order in which the changes were made
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Changed coupon, null when every coupon has to be reloaded (after a bulk import)
+    private Long couponId;
+
+    private LocalDateTime changedAt;
+
+    public CouponChange(Long couponId, LocalDateTime changedAt) {
+        this(null, couponId, changedAt);
+    }
+}
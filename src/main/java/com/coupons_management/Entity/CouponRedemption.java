@@ -0,0 +1,34 @@
+package com.coupons_management.Entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Number of times one user redeemed one coupon, kept for per-user redemption limits
+@Data
+@Entity
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(CouponRedemption.Key.class)
+@Table(name = "coupon_redemptions")
+public class CouponRedemption {
+
+    @Id
+    private Long couponId;
+
+    @Id
+    private String userId;
+
+    private long redemptionCount;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long couponId;
+        private String userId;
+    }
+}
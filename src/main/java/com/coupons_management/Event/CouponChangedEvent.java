@@ -0,0 +1,30 @@
+package com.coupons_management.Event;
+
+import com.coupons_management.Entity.Coupon;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+// Published by CouponService after a coupon is created, updated or deleted,
+// and by CouponReplication for the changes made by other instances
+@Getter
+@ToString
+@AllArgsConstructor
+public class CouponChangedEvent {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final ChangeType changeType;
+    private final Long couponId;
+    private final Long version; // version of the coupon after the change
+    private final Coupon coupon; // null for DELETED
+    private final boolean replicated; // read from the change log, already committed by another instance
+
+    public CouponChangedEvent(ChangeType changeType, Long couponId, Long version, Coupon coupon) {
+        this(changeType, couponId, version, coupon, false);
+    }
+}
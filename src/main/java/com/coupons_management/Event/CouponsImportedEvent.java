@@ -0,0 +1,20 @@
+package com.coupons_management.Event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+// Published by CouponBulkService once a bulk import has inserted coupons.
+// Imports do not publish one CouponChangedEvent per coupon, listeners reload or drop everything instead.
+@Getter
+@ToString
+@AllArgsConstructor
+public class CouponsImportedEvent {
+
+    private final long imported;
+    private final boolean replicated; // import made by another instance, the count is unknown
+
+    public CouponsImportedEvent(long imported) {
+        this(imported, false);
+    }
+}
@@ -0,0 +1,7 @@
+package com.coupons_management.Exception;
+
+public class RedemptionLimitException extends RuntimeException {
+    public RedemptionLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package com.coupons_management.Repository;
+
+import com.coupons_management.Entity.CouponChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CouponChangeRepository extends JpaRepository<CouponChange, Long> {
+
+    // Id of the last logged change, null when the log is empty
+    @Query("SELECT MAX(c.id) FROM CouponChange c")
+    Long findLastId();
+
+    // Changes after the given id, plus the recent ones that may have committed after a later id was read
+    @Query("SELECT c FROM CouponChange c WHERE c.id > :afterId OR c.changedAt >= :since ORDER BY c.id")
+    List<CouponChange> findChangesSince(@Param("afterId") long afterId, @Param("since") LocalDateTime since);
+
+    // Prune the log; instances whose snapshot is older than this reload everything
+    @Modifying
+    @Query("DELETE FROM CouponChange c WHERE c.changedAt < :before")
+    int deleteChangedBefore(@Param("before") LocalDateTime before);
+}
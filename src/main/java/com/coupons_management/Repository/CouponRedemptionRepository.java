@@ -0,0 +1,23 @@
+package com.coupons_management.Repository;
+
+import com.coupons_management.Entity.CouponRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CouponRedemptionRepository extends JpaRepository<CouponRedemption, CouponRedemption.Key> {
+
+    // Add flushed redemptions to a user's stored count, returns 0 when the user has no row yet
+    @Modifying
+    @Query("UPDATE CouponRedemption r SET r.redemptionCount = r.redemptionCount + :count "
+            + "WHERE r.couponId = :couponId AND r.userId = :userId")
+    int addRedemptions(@Param("couponId") Long couponId, @Param("userId") String userId, @Param("count") long count);
+
+    // Drop the per-user counts of a deleted coupon
+    @Modifying
+    @Query("DELETE FROM CouponRedemption r WHERE r.couponId = :couponId")
+    int deleteByCoupon(@Param("couponId") Long couponId);
+}
@@ -1,9 +1,73 @@
 package com.coupons_management.Repository;
 
+import com.coupons_management.DTO.CouponSummary;
 import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
 @Repository
 public interface CouponRepository extends JpaRepository<Coupon, Long> {
+
+    // Coupons without an expiration date or expiring after the given time
+    @QueryHints(@QueryHint(name = HINT_READ_ONLY, value = "true"))
+    @Query("SELECT c FROM Coupon c WHERE c.expirationDate IS NULL OR c.expirationDate >= :now")
+    List<Coupon> findActive(@Param("now") LocalDateTime now);
+
+    // Active coupons of one type, served by the type and expiration date indexes
+    @QueryHints(@QueryHint(name = HINT_READ_ONLY, value = "true"))
+    @Query("SELECT c FROM Coupon c WHERE c.type = :type AND (c.expirationDate IS NULL OR c.expirationDate >= :now)")
+    List<Coupon> findActiveByType(@Param("type") CouponType type, @Param("now") LocalDateTime now);
+
+    // One page of coupons, without the count query a Page would need
+    Slice<Coupon> findAllBy(Pageable pageable);
+
+    // Every coupon in id order, read lazily; the stream must be consumed inside a transaction
+    @QueryHints({@QueryHint(name = HINT_READ_ONLY, value = "true"), @QueryHint(name = HINT_FETCH_SIZE, value = "500")})
+    @Query("SELECT c FROM Coupon c ORDER BY c.id")
+    Stream<Coupon> streamAll();
+
+    // Id, type and expiration date of every coupon, without loading the details column
+    @Query("SELECT new com.coupons_management.DTO.CouponSummary(c.id, c.type, c.expirationDate) FROM Coupon c ORDER BY c.id")
+    List<CouponSummary> findAllSummaries();
+
+    // Summaries of the active coupons, optionally limited to one type
+    @Query("SELECT new com.coupons_management.DTO.CouponSummary(c.id, c.type, c.expirationDate) FROM Coupon c "
+            + "WHERE (:type IS NULL OR c.type = :type) AND (c.expirationDate IS NULL OR c.expirationDate >= :now) ORDER BY c.id")
+    List<CouponSummary> findActiveSummaries(@Param("type") CouponType type, @Param("now") LocalDateTime now);
+
+    // Add flushed redemptions to the stored count. The version is left alone so redemptions
+    // never conflict with edits of the coupon; returns 0 when the coupon no longer exists.
+    @Modifying
+    @Query("UPDATE Coupon c SET c.redemptionCount = c.redemptionCount + :count WHERE c.id = :id")
+    int addRedemptions(@Param("id") Long id, @Param("count") long count);
+
+    // Stored redemption count of a coupon, with the redemptions flushed by every instance
+    @Query("SELECT c.redemptionCount FROM Coupon c WHERE c.id = :id")
+    Optional<Long> findRedemptionCount(@Param("id") Long id);
+
+    // Coupons whose details are still in the legacy JSON column, in id order after the given id
+    List<Coupon> findByLegacyDetailsIsNotNullAndIdGreaterThanOrderById(Long afterId, Pageable pageable);
+
+    // Move a coupon's details from the JSON column to the binary one. The version is left alone since the
+    // details do not change; a row saved meanwhile already has binary details and is skipped.
+    @Modifying
+    @Query(value = "UPDATE coupons SET details_bin = :details, details = NULL WHERE id = :id AND details_bin IS NULL",
+            nativeQuery = true)
+    int migrateDetails(@Param("id") Long id, @Param("details") byte[] details);
 }
@@ -0,0 +1,25 @@
+package com.coupons_management.Service;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Immutable;
+
+import java.util.Map;
+
+// Stores coupon details in the compact binary layout of DetailsCodec.
+// Loading a row keeps the bytes and decodes them on first access. The loaded details are
+// unmodifiable and always replaced as a whole.
+@Immutable
+@Converter
+public class BinaryDetailsConverter implements AttributeConverter<Map<String, Object>, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(Map<String, Object> attribute) {
+        return attribute != null ? DetailsCodec.encode(attribute) : null;
+    }
+
+    @Override
+    public Map<String, Object> convertToEntityAttribute(byte[] dbData) {
+        return dbData != null ? DetailsCodec.lazy(dbData) : null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Engine.CartFingerprint;
+import com.coupons_management.Engine.CouponRule;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Short-lived results of cart evaluations, shared by requests posting the same cart.
+// Storefronts post the same cart on every page render and retry. A result is keyed by the cart's
+// fingerprint and by what it was computed from: the generation of the coupon index for the applicable
+// coupons, the compiled rule for an applied coupon. A coupon change makes the old results unreachable;
+// the TTL bounds how long an unchanged one is reused.
+// Identical requests arriving together are coalesced: the first evaluates in its own thread and the
+// others wait on its future. A failed evaluation is not cached, its waiters get the same exception.
+@Component
+public class CartEvaluationCache {
+
+    private final AsyncCache<Object, Object> results; // null when disabled
+
+    public CartEvaluationCache(CouponMetrics couponMetrics,
+                               @Value("${coupons.evaluations.ttl:2s}") Duration ttl,
+                               @Value("${coupons.evaluations.maximum-size:10000}") long maximumSize) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            results = null;
+            return;
+        }
+        results = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .buildAsync();
+        couponMetrics.monitorCache(results.synchronous(), "coupons.evaluations");
+    }
+
+    // Result of evaluating the applicable coupons of the cart on the index of the given generation
+    public <T> T getApplicable(CartFingerprint fingerprint, long generation, Supplier<T> evaluation) {
+        return get(new ApplicableKey(generation, fingerprint), evaluation);
+    }
+
+    // Result of applying the rule to the cart
+    public <T> T getApplied(CartFingerprint fingerprint, CouponRule rule, Supplier<T> evaluation) {
+        return get(new AppliedKey(rule, fingerprint), evaluation);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Object key, Supplier<T> evaluation) {
+        if (results == null) {
+            return evaluation.get();
+        }
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> result = results.get(key, (k, executor) -> created);
+        if (result != created) {
+            try {
+                return (T) result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            T value = evaluation.get();
+            created.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private record ApplicableKey(long generation, CartFingerprint fingerprint) {
+    }
+
+    // Rules are compared by identity, a changed coupon is compiled into a new rule
+    private record AppliedKey(CouponRule rule, CartFingerprint fingerprint) {
+    }
+}
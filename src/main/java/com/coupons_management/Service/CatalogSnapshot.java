@@ -0,0 +1,199 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Active coupons at a version of the change log, stored in a compact binary file.
+// Layout (big-endian): magic, format version, catalog version, sync time, coupon count, then per coupon
+// its id, flags, type, the optional fields announced by the flags and the length-prefixed details,
+// in the DetailsCodec layout (JSON text in format 1). The file is read in one go, since every coupon
+// becomes an entity for the catalog anyway, and replaced atomically when written.
+public final class CatalogSnapshot {
+
+    private static final int MAGIC = 0x43504E53; // "CPNS"
+    private static final short FORMAT_VERSION = 2;
+    private static final short JSON_DETAILS_VERSION = 1;
+
+    private static final int EXCLUSIVE = 1;
+    private static final int HAS_EXPIRATION = 1 << 1;
+    private static final int HAS_STACKING_GROUP = 1 << 2;
+    private static final int HAS_MAX_REDEMPTIONS = 1 << 3;
+    private static final int HAS_MAX_PER_USER = 1 << 4;
+    private static final int HAS_VERSION = 1 << 5;
+
+    private static final CouponType[] TYPES = CouponType.values();
+    private static final JsonConverter jsonConverter = new JsonConverter();
+
+    private final long version;
+    private final LocalDateTime syncedAt;
+    private final List<Coupon> coupons;
+
+    public CatalogSnapshot(long version, LocalDateTime syncedAt, List<Coupon> coupons) {
+        this.version = version;
+        this.syncedAt = syncedAt;
+        this.coupons = coupons;
+    }
+
+    // Id of the last change log entry contained in the snapshot
+    public long getVersion() {
+        return version;
+    }
+
+    // When the changes up to the version were read; later commits of earlier ids are replayed from here
+    public LocalDateTime getSyncedAt() {
+        return syncedAt;
+    }
+
+    public List<Coupon> getCoupons() {
+        return coupons;
+    }
+
+    public static void write(Path path, long version, LocalDateTime syncedAt, Collection<Coupon> coupons) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                out.writeLong(version);
+                writeDateTime(out, syncedAt);
+                out.writeInt(coupons.size());
+                for (Coupon coupon : coupons) {
+                    writeCoupon(out, coupon);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeCoupon(DataOutputStream out, Coupon coupon) throws IOException {
+        int flags = (coupon.isExclusive() ? EXCLUSIVE : 0)
+                | (coupon.getExpirationDate() != null ? HAS_EXPIRATION : 0)
+                | (coupon.getStackingGroup() != null ? HAS_STACKING_GROUP : 0)
+                | (coupon.getMaxRedemptions() != null ? HAS_MAX_REDEMPTIONS : 0)
+                | (coupon.getMaxRedemptionsPerUser() != null ? HAS_MAX_PER_USER : 0)
+                | (coupon.getVersion() != null ? HAS_VERSION : 0);
+        out.writeLong(coupon.getId());
+        out.writeByte(flags);
+        out.writeByte(coupon.getType().ordinal());
+        if (coupon.getExpirationDate() != null) {
+            writeDateTime(out, coupon.getExpirationDate());
+        }
+        if (coupon.getStackingGroup() != null) {
+            writeBytes(out, coupon.getStackingGroup().getBytes(StandardCharsets.UTF_8));
+        }
+        if (coupon.getMaxRedemptions() != null) {
+            out.writeInt(coupon.getMaxRedemptions());
+        }
+        if (coupon.getMaxRedemptionsPerUser() != null) {
+            out.writeInt(coupon.getMaxRedemptionsPerUser());
+        }
+        if (coupon.getVersion() != null) {
+            out.writeLong(coupon.getVersion());
+        }
+        out.writeLong(coupon.getRedemptionCount());
+        writeBytes(out, coupon.getDetails() != null ? DetailsCodec.encode(coupon.getDetails()) : new byte[0]);
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime dateTime) throws IOException {
+        out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(dateTime.getNano());
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Read a snapshot file, IOException when it is missing, truncated or of another format
+    public static CatalogSnapshot read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a coupon catalog snapshot: " + path);
+            }
+            short format = buffer.getShort();
+            if (format != FORMAT_VERSION && format != JSON_DETAILS_VERSION) {
+                throw new IOException("Unsupported coupon catalog snapshot format " + format + ": " + path);
+            }
+            long version = buffer.getLong();
+            LocalDateTime syncedAt = readDateTime(buffer);
+            int count = buffer.getInt();
+            List<Coupon> coupons = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                coupons.add(readCoupon(buffer, format));
+            }
+            return new CatalogSnapshot(version, syncedAt, coupons);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt coupon catalog snapshot: " + path, e);
+        }
+    }
+
+    private static Coupon readCoupon(ByteBuffer buffer, short format) {
+        Coupon coupon = new Coupon();
+        coupon.setId(buffer.getLong());
+        int flags = buffer.get();
+        coupon.setType(TYPES[buffer.get()]);
+        coupon.setExclusive((flags & EXCLUSIVE) != 0);
+        if ((flags & HAS_EXPIRATION) != 0) {
+            coupon.setExpirationDate(readDateTime(buffer));
+        }
+        if ((flags & HAS_STACKING_GROUP) != 0) {
+            coupon.setStackingGroup(readString(buffer));
+        }
+        if ((flags & HAS_MAX_REDEMPTIONS) != 0) {
+            coupon.setMaxRedemptions(buffer.getInt());
+        }
+        if ((flags & HAS_MAX_PER_USER) != 0) {
+            coupon.setMaxRedemptionsPerUser(buffer.getInt());
+        }
+        if ((flags & HAS_VERSION) != 0) {
+            coupon.setVersion(buffer.getLong());
+        }
+        coupon.setRedemptionCount(buffer.getLong());
+        byte[] details = readBytes(buffer);
+        if (details.length > 0) {
+            coupon.setDetails(format == JSON_DETAILS_VERSION
+                    ? jsonConverter.convertToEntityAttribute(new String(details, StandardCharsets.UTF_8))
+                    : DetailsCodec.lazy(details));
+        }
+        return coupon;
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer buffer) {
+        long seconds = buffer.getLong();
+        return LocalDateTime.ofEpochSecond(seconds, buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
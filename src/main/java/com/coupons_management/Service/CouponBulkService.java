@@ -0,0 +1,156 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.DTO.BulkImportResult;
+import com.coupons_management.Engine.CouponRuleCompiler;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.coupons_management.Exception.InvalidCouponException;
+import com.coupons_management.Repository.CouponRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Streaming bulk import and export of coupons.
+// Input and output are read and written one coupon at a time with the Jackson streaming API,
+// as a JSON array or as newline-delimited JSON, so neither side is held in memory as a whole.
+@Service
+public class CouponBulkService {
+
+    static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final CouponRepository couponRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter couponWriter;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(CouponBulkService.class);
+
+    public CouponBulkService(CouponRepository couponRepository, ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper,
+                             EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.couponRepository = couponRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.couponWriter = objectMapper.writerFor(Coupon.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    // Import coupons from a JSON array or from newline-delimited JSON objects.
+    // Rows with an invalid type or details are skipped and reported, valid rows are inserted
+    // in batches, each batch in its own transaction.
+    public BulkImportResult importCoupons(InputStream input) throws IOException {
+        long imported = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+        List<Coupon> batch = new ArrayList<>(BATCH_SIZE);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+
+            long row = 0;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                row++;
+                // Read the row as a tree first, so a row that does not map to a coupon is skipped cleanly
+                JsonNode node = objectMapper.readTree(parser);
+                try {
+                    Coupon coupon = objectMapper.treeToValue(node, Coupon.class);
+                    CouponRuleCompiler.validate(coupon);
+                    coupon.setId(null);
+                    coupon.setVersion(null);
+                    batch.add(coupon);
+                } catch (JsonProcessingException e) {
+                    rejected++;
+                    addError(errors, row, e.getOriginalMessage());
+                } catch (InvalidCouponException | IllegalArgumentException e) {
+                    rejected++;
+                    addError(errors, row, e.getMessage());
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    imported += saveBatch(batch);
+                }
+                token = parser.nextToken();
+            }
+            if (!batch.isEmpty()) {
+                imported += saveBatch(batch);
+            }
+        } catch (JsonProcessingException e) {
+            throw new InvalidCouponException("Malformed JSON after " + imported + " imported coupons: " + e.getOriginalMessage());
+        } finally {
+            // A single reload is cheaper than one index update per imported coupon
+            if (imported > 0) {
+                eventPublisher.publishEvent(new CouponsImportedEvent(imported));
+            }
+        }
+
+        logger.info("Bulk import finished: {} imported, {} rejected", imported, rejected);
+        return new BulkImportResult(imported, rejected, errors);
+    }
+
+    private static void addError(List<String> errors, long row, String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("Row " + row + ": " + message);
+        }
+    }
+
+    private int saveBatch(List<Coupon> batch) {
+        int size = batch.size();
+        transactionTemplate.executeWithoutResult(status -> couponRepository.saveAllAndFlush(batch));
+        batch.clear();
+        return size;
+    }
+
+    // Write every coupon to the output, as newline-delimited JSON or as a single JSON array.
+    // Coupons are read from a database cursor and detached once written.
+    public void exportCoupons(OutputStream output, boolean ndjson) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Coupon> coupons = couponRepository.streamAll();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                if (!ndjson) {
+                    generator.writeStartArray();
+                }
+                for (Coupon coupon : (Iterable<Coupon>) coupons::iterator) {
+                    couponWriter.writeValue(generator, coupon);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                    entityManager.detach(coupon);
+                }
+                if (!ndjson) {
+                    generator.writeEndArray();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Error exporting coupons", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,171 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Engine.CouponRule;
+import com.coupons_management.Engine.CouponRuleCompiler;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.coupons_management.Repository.CouponRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Bounded read-through cache of coupons by id, holding each coupon with its compiled rule.
+// Unknown ids are cached too, for a much shorter time, so retries with a bad id do not reach
+// the database. Entries are dropped when their coupon changes; cached coupons are shared
+// between requests and must not be modified.
+// As in CartEvaluationCache, a miss only puts a future in the cache and the first caller loads it
+// in its own thread, so no cache lock is held while waiting for a database connection (a virtual
+// thread waiting inside one would pin its carrier thread).
+@Component
+public class CouponCache {
+
+    private static final CachedCoupon MISSING = new CachedCoupon(null, null);
+
+    private final CouponRepository couponRepository;
+    private final CouponMetrics couponMetrics;
+    private final AsyncCache<Long, CachedCoupon> cache;
+
+    public CouponCache(CouponRepository couponRepository, CouponMetrics couponMetrics,
+                       @Value("${coupons.cache.maximum-size:10000}") long maximumSize,
+                       @Value("${coupons.cache.ttl:10m}") Duration ttl,
+                       @Value("${coupons.cache.negative-ttl:5s}") Duration negativeTtl) {
+        this.couponRepository = couponRepository;
+        this.couponMetrics = couponMetrics;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Long, CachedCoupon>() {
+                    @Override
+                    public long expireAfterCreate(Long id, CachedCoupon value, long currentTime) {
+                        return (value == MISSING ? negativeTtl : ttl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, CachedCoupon value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, CachedCoupon value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        couponMetrics.monitorCache(cache.synchronous(), "coupons.byId");
+    }
+
+    private CachedCoupon load(Long id) {
+        return couponMetrics.timeFindById(() -> couponRepository.findById(id))
+                .map(CouponCache::cached)
+                .orElse(MISSING);
+    }
+
+    private Map<Long, CachedCoupon> loadAll(Set<? extends Long> ids) {
+        Map<Long, CachedCoupon> loaded = new HashMap<>();
+        for (Coupon coupon : couponRepository.findAllById(List.copyOf(ids))) {
+            loaded.put(coupon.getId(), cached(coupon));
+        }
+        for (Long id : ids) {
+            loaded.putIfAbsent(id, MISSING);
+        }
+        return loaded;
+    }
+
+    private static CachedCoupon cached(Coupon coupon) {
+        return new CachedCoupon(coupon, CouponRuleCompiler.compile(coupon));
+    }
+
+    // The coupon with the given id and its rule, loading it on a miss
+    public Optional<CachedCoupon> get(Long id) {
+        CompletableFuture<CachedCoupon> created = new CompletableFuture<>();
+        CompletableFuture<CachedCoupon> result = cache.get(id, (key, executor) -> created);
+        if (result == created) {
+            complete(created, () -> load(id));
+        }
+        CachedCoupon cached = join(result);
+        return cached == MISSING ? Optional.empty() : Optional.of(cached);
+    }
+
+    // The coupons with the given ids, loading the missing ones in one query; unknown ids are left out
+    @SuppressWarnings("unchecked")
+    public Map<Long, CachedCoupon> getAll(Collection<Long> ids) {
+        CompletableFuture<Map<Long, CachedCoupon>> created = new CompletableFuture<>();
+        Set<? extends Long>[] missing = new Set[1];
+        CompletableFuture<Map<Long, CachedCoupon>> result = cache.getAll(ids, (keys, executor) -> {
+            missing[0] = keys;
+            return created;
+        });
+        if (missing[0] != null) {
+            complete(created, () -> loadAll(missing[0]));
+        }
+        Map<Long, CachedCoupon> found = new HashMap<>(join(result));
+        found.values().removeIf(cached -> cached == MISSING);
+        return found;
+    }
+
+    // Load a value into the future the cache handed out, waiters get the same exception on failure
+    private static <T> void complete(CompletableFuture<T> future, Supplier<T> loader) {
+        try {
+            future.complete(loader.get());
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // Drop the entry of a created, updated or deleted coupon, including a cached miss of a new id
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponChanged(CouponChangedEvent event) {
+        cache.synchronous().invalidate(event.getCouponId());
+    }
+
+    // Imported coupons may have been cached as unknown ids
+    @EventListener(CouponsImportedEvent.class)
+    public void onCouponsImported() {
+        cache.synchronous().invalidateAll();
+    }
+
+    // A coupon with its compiled rule, the rule is null when the details are incomplete
+    public static final class CachedCoupon {
+
+        private final Coupon coupon;
+        private final CouponRule rule;
+
+        private CachedCoupon(Coupon coupon, CouponRule rule) {
+            this.coupon = coupon;
+            this.rule = rule;
+        }
+
+        public Coupon getCoupon() {
+            return coupon;
+        }
+
+        public CouponRule getRule() {
+            return rule;
+        }
+    }
+}
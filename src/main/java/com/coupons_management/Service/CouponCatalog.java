@@ -0,0 +1,236 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Engine.CouponIndex;
+import com.coupons_management.Engine.CouponRule;
+import com.coupons_management.Engine.CouponRuleCompiler;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponChangedEvent.ChangeType;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.coupons_management.Repository.CouponRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Holds the in-memory index of the active coupons used when matching carts.
+// The index is loaded lazily from the non-expired rows, then kept up to date from coupon change events.
+// Coupons with an expiration date sit in a queue ordered by that date, and a timer evicts
+// each one from the index as soon as it expires, so lookups never check expiration dates.
+@Component
+public class CouponCatalog {
+
+    // Change events arrive after commit, in any order; a deleted coupon is remembered for this long
+    private static final Duration TOMBSTONE_TTL = Duration.ofMinutes(10);
+
+    private final CouponRepository couponRepository;
+    private final CouponMetrics couponMetrics;
+    private final Clock clock;
+    private static final Logger logger = LoggerFactory.getLogger(CouponCatalog.class);
+
+    // Guards the index and the expiry queue. A lock rather than a monitor: the first lookup loads the
+    // index from the database while holding it, and a virtual thread blocked in a monitor pins its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final PriorityQueue<CouponRule> expiryQueue =
+            new PriorityQueue<>(Comparator.comparing((CouponRule rule) -> rule.getCoupon().getExpirationDate()));
+    private final ScheduledExecutorService expiryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "coupon-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Version of each recently deleted coupon, so an older change applied late does not bring it back
+    private final Cache<Long, Long> tombstones = Caffeine.newBuilder().expireAfterWrite(TOMBSTONE_TTL).build();
+
+    private volatile CouponIndex index;
+    private ScheduledFuture<?> expiryTask;
+
+    @Autowired
+    public CouponCatalog(CouponRepository couponRepository, CouponMetrics couponMetrics) {
+        this(couponRepository, couponMetrics, Clock.systemDefaultZone());
+    }
+
+    // Expiration dates are compared with the given clock
+    public CouponCatalog(CouponRepository couponRepository, CouponMetrics couponMetrics, Clock clock) {
+        this.couponRepository = couponRepository;
+        this.couponMetrics = couponMetrics;
+        this.clock = clock;
+    }
+
+    // Current index, loading it from the database if it was refreshed since the last call
+    public CouponIndex getIndex() {
+        CouponIndex current = index;
+        if (current != null) {
+            return current;
+        }
+        lock.lock();
+        try {
+            if (index == null) {
+                LocalDateTime now = LocalDateTime.now(clock);
+                install(couponMetrics.timeIndexLoad(() -> couponRepository.findActive(now)), now);
+                logger.info("Coupon index loaded with {} active coupons", index.size());
+            }
+            return index;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Replace the index with one built from the given coupons, e.g. the ones of a snapshot file
+    public void install(Collection<Coupon> coupons) {
+        lock.lock();
+        try {
+            install(coupons, LocalDateTime.now(clock));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void install(Collection<Coupon> coupons, LocalDateTime now) {
+        CouponIndex loaded = CouponIndex.build(coupons, now);
+        expiryQueue.clear();
+        for (CouponRule rule : loaded.getRules()) {
+            if (rule.getCoupon().getExpirationDate() != null) {
+                expiryQueue.add(rule);
+            }
+        }
+        index = loaded;
+        scheduleNextExpiry();
+    }
+
+    // Drop the current index so the next lookup reloads it
+    @EventListener(CouponsImportedEvent.class)
+    public void refresh() {
+        lock.lock();
+        try {
+            index = null;
+            expiryQueue.clear();
+            cancelExpiryTask();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Keep the loaded index in step with coupon writes, once they are committed.
+    // Events older than the indexed version of the coupon, or than its deletion, are ignored.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponChanged(CouponChangedEvent event) {
+        lock.lock();
+        try {
+            if (event.getChangeType() == ChangeType.DELETED) {
+                // Replicated deletions carry no version, the coupon is gone whatever the version
+                tombstones.put(event.getCouponId(), event.getVersion() != null ? event.getVersion() : Long.MAX_VALUE);
+            } else if (isDeleted(event)) {
+                logger.debug("Ignoring change event of a deleted coupon: {}", event);
+                return;
+            }
+            if (index == null) {
+                return; // the next lookup loads the committed state
+            }
+            CouponRule existing = index.getRule(event.getCouponId());
+            if (existing != null && isNewer(existing.getCoupon().getVersion(), event.getVersion())) {
+                logger.debug("Ignoring stale change event: {}", event);
+                return;
+            }
+
+            CouponRule rule = null;
+            if (event.getChangeType() != ChangeType.DELETED) {
+                LocalDateTime expirationDate = event.getCoupon().getExpirationDate();
+                if (expirationDate == null || !expirationDate.isBefore(LocalDateTime.now(clock))) {
+                    rule = CouponRuleCompiler.compile(event.getCoupon());
+                }
+            }
+
+            if (existing == null && rule == null) {
+                return;
+            }
+            index = index.withRule(event.getCouponId(), rule);
+            if (existing != null) {
+                expiryQueue.remove(existing);
+            }
+            if (rule != null && rule.getCoupon().getExpirationDate() != null) {
+                expiryQueue.add(rule);
+            }
+            scheduleNextExpiry();
+            logger.debug("Applied {} of coupon {} (version {}) to the index", event.getChangeType(), event.getCouponId(), event.getVersion());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A deletion commits after every change of the version it deleted
+    private boolean isDeleted(CouponChangedEvent event) {
+        Long deletedVersion = tombstones.getIfPresent(event.getCouponId());
+        return deletedVersion != null && (event.getVersion() == null || event.getVersion() <= deletedVersion);
+    }
+
+    private static boolean isNewer(Long indexedVersion, Long eventVersion) {
+        return indexedVersion != null && eventVersion != null && indexedVersion > eventVersion;
+    }
+
+    // Remove the coupons whose expiration date has passed from the index, run by the expiry timer
+    public void evictExpired() {
+        lock.lock();
+        try {
+            if (index == null) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now(clock);
+            List<CouponRule> expired = new ArrayList<>();
+            while (!expiryQueue.isEmpty() && expiryQueue.peek().getCoupon().getExpirationDate().isBefore(now)) {
+                expired.add(expiryQueue.poll());
+            }
+            if (!expired.isEmpty()) {
+                index = index.without(expired);
+                logger.info("Evicted {} expired coupons from the index", expired.size());
+            }
+            scheduleNextExpiry();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Arm the timer for the earliest expiration in the queue
+    private void scheduleNextExpiry() {
+        cancelExpiryTask();
+        CouponRule next = expiryQueue.peek();
+        if (next == null) {
+            return;
+        }
+        // A coupon is still valid at its expiration instant, evict it just after
+        long delay = Math.max(0, Duration.between(LocalDateTime.now(clock), next.getCoupon().getExpirationDate()).toMillis() + 1);
+        expiryTask = expiryScheduler.schedule(this::evictExpired, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelExpiryTask() {
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+            expiryTask = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryScheduler.shutdownNow();
+    }
+}
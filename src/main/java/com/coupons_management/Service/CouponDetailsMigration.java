@@ -0,0 +1,71 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Repository.CouponRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Moves coupon details written as JSON text (the details column) to the binary details_bin column.
+// Until a row is moved its details are still read from the JSON, so the service runs unchanged
+// while the migration is under way; new and updated coupons are always written in the binary form.
+// Once no row is left, the details column is no longer read and can be dropped.
+@Component
+public class CouponDetailsMigration {
+
+    private final CouponRepository couponRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final boolean migrateOnStartup;
+    private static final Logger logger = LoggerFactory.getLogger(CouponDetailsMigration.class);
+
+    public CouponDetailsMigration(CouponRepository couponRepository, PlatformTransactionManager transactionManager,
+                                  @Value("${coupons.details.migration-batch-size:500}") int batchSize,
+                                  @Value("${coupons.details.migrate-on-startup:true}") boolean migrateOnStartup) {
+        this.couponRepository = couponRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (migrateOnStartup) {
+            migrate();
+        }
+    }
+
+    // Convert the remaining rows, one transaction per batch. Returns the number of rows converted.
+    public long migrate() {
+        long migrated = 0;
+        long[] lastId = {Long.MIN_VALUE};
+        while (true) {
+            Integer converted = transactionTemplate.execute(status -> {
+                List<Coupon> batch = couponRepository.findByLegacyDetailsIsNotNullAndIdGreaterThanOrderById(
+                        lastId[0], PageRequest.of(0, batchSize));
+                int count = 0;
+                for (Coupon coupon : batch) {
+                    count += couponRepository.migrateDetails(coupon.getId(), DetailsCodec.encode(coupon.getDetails()));
+                    lastId[0] = coupon.getId();
+                }
+                return batch.isEmpty() ? null : count;
+            });
+            if (converted == null) {
+                break;
+            }
+            migrated += converted;
+        }
+        if (migrated > 0) {
+            logger.info("Moved the details of {} coupons to the binary column", migrated);
+        }
+        return migrated;
+    }
+}
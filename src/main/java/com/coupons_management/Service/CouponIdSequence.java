@@ -0,0 +1,69 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Entity.Coupon;
+import jakarta.persistence.EntityManager;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Keeps the pooled coupon id sequence ahead of the ids already in the coupons table.
+// Databases created while coupon ids were IDENTITY values hold ids a fresh sequence would hand out
+// again. At startup, before the server takes requests, the sequence is moved past max(id) when it
+// is behind; it is never moved back. On MySQL the sequence is the table Hibernate creates for it
+// (one next_val row), on databases with sequences a native sequence.
+@Component
+public class CouponIdSequence implements SmartInitializingSingleton {
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Dialect dialect;
+    private static final Logger logger = LoggerFactory.getLogger(CouponIdSequence.class);
+
+    public CouponIdSequence(EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        align();
+    }
+
+    // Move the sequence so the next block of ids starts after the highest coupon id.
+    // Returns true when it was moved.
+    public boolean align() {
+        Boolean moved = transactionTemplate.execute(status -> {
+            Number maxId = (Number) entityManager.createQuery("SELECT MAX(c.id) FROM Coupon c").getSingleResult();
+            if (maxId == null) {
+                return false;
+            }
+            // A pooled value v hands out the ids v - allocationSize + 1 to v
+            long next = maxId.longValue() + Coupon.ID_ALLOCATION_SIZE;
+            if (!dialect.getSequenceSupport().supportsSequences()) {
+                return entityManager.createNativeQuery(
+                                "UPDATE " + Coupon.ID_SEQUENCE + " SET next_val = :next WHERE next_val < :next")
+                        .setParameter("next", next)
+                        .executeUpdate() > 0;
+            }
+            // Reading the current value takes one block, which is simply left unused
+            Number current = (Number) entityManager.createNativeQuery(
+                    dialect.getSequenceSupport().getSequenceNextValString(Coupon.ID_SEQUENCE)).getSingleResult();
+            if (current.longValue() >= next) {
+                return false;
+            }
+            entityManager.createNativeQuery("ALTER SEQUENCE " + Coupon.ID_SEQUENCE + " RESTART WITH " + next).executeUpdate();
+            return true;
+        });
+        if (Boolean.TRUE.equals(moved)) {
+            logger.info("Moved the coupon id sequence past the existing coupon ids");
+        }
+        return Boolean.TRUE.equals(moved);
+    }
+}
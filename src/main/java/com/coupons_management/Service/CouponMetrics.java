@@ -0,0 +1,126 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Engine.EvaluationStats;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.coupons_management.Enum.CouponType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+// Micrometer meters of the coupon evaluation hot path, exposed through Actuator (/actuator/prometheus).
+// Meters are registered once here, so recording never looks a meter up by name and tags.
+@Component
+public class CouponMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer applicableTimer;
+    private final Timer rankTimer;
+    private final Timer stackTimer;
+    private final Timer[] applyTimers = new Timer[CouponType.values().length];
+    private final Counter[] scannedCounters = new Counter[CouponType.values().length];
+    private final Counter[] matchedCounters = new Counter[CouponType.values().length];
+    private final DistributionSummary cartSize;
+    private final Timer indexLoadTimer;
+    private final Timer findByIdTimer;
+
+    public CouponMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        applicableTimer = Timer.builder("coupons.applicable")
+                .description("Time to find the applicable coupons of a cart")
+                .publishPercentileHistogram()
+                .register(registry);
+        rankTimer = Timer.builder("coupons.rank")
+                .description("Time to rank the applicable coupons of a cart by discount")
+                .publishPercentileHistogram()
+                .register(registry);
+        stackTimer = Timer.builder("coupons.stack")
+                .description("Time to apply or search a stack of coupons on a cart")
+                .publishPercentileHistogram()
+                .register(registry);
+        for (CouponType type : CouponType.values()) {
+            applyTimers[type.ordinal()] = Timer.builder("coupons.apply")
+                    .description("Time to apply a coupon to a cart")
+                    .tag("type", type.name())
+                    .publishPercentileHistogram()
+                    .register(registry);
+            scannedCounters[type.ordinal()] = Counter.builder("coupons.evaluation.scanned")
+                    .description("Coupon rules evaluated against carts")
+                    .tag("type", type.name())
+                    .register(registry);
+            matchedCounters[type.ordinal()] = Counter.builder("coupons.evaluation.matched")
+                    .description("Coupon rules that matched a cart")
+                    .tag("type", type.name())
+                    .register(registry);
+        }
+        cartSize = DistributionSummary.builder("coupons.cart.size")
+                .description("Number of items in the evaluated carts")
+                .baseUnit("items")
+                .publishPercentileHistogram()
+                .register(registry);
+        indexLoadTimer = Timer.builder("coupons.db.fetch")
+                .description("Time spent loading coupons from the database")
+                .tag("query", "findActive")
+                .register(registry);
+        findByIdTimer = Timer.builder("coupons.db.fetch")
+                .description("Time spent loading coupons from the database")
+                .tag("query", "findById")
+                .register(registry);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start();
+    }
+
+    // Stats are null when no rule was evaluated (empty index, reused result), only the time is recorded
+    public void recordApplicable(Timer.Sample sample, int items, EvaluationStats stats) {
+        sample.stop(applicableTimer);
+        if (stats != null) {
+            recordEvaluation(items, stats);
+        }
+    }
+
+    public void recordRank(Timer.Sample sample, int items, EvaluationStats stats) {
+        sample.stop(rankTimer);
+        recordEvaluation(items, stats);
+    }
+
+    public void recordStack(Timer.Sample sample, int items, EvaluationStats stats) {
+        sample.stop(stackTimer);
+        if (stats != null) {
+            recordEvaluation(items, stats);
+        }
+    }
+
+    public void recordApply(Timer.Sample sample, CouponType type) {
+        sample.stop(applyTimers[type.ordinal()]);
+    }
+
+    public void recordEvaluation(int items, EvaluationStats stats) {
+        cartSize.record(items);
+        for (CouponType type : CouponType.values()) {
+            int scanned = stats.getScanned(type);
+            if (scanned > 0) {
+                scannedCounters[type.ordinal()].increment(scanned);
+                matchedCounters[type.ordinal()].increment(stats.getMatched(type));
+            }
+        }
+    }
+
+    // Expose the size, hit, miss and eviction counts of a cache built with recordStats()
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    public <T> T timeIndexLoad(Supplier<T> query) {
+        return indexLoadTimer.record(query);
+    }
+
+    public <T> T timeFindById(Supplier<T> query) {
+        return findByIdTimer.record(query);
+    }
+}
@@ -0,0 +1,292 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Entity.CouponRedemption;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponChangedEvent.ChangeType;
+import com.coupons_management.Repository.CouponRedemptionRepository;
+import com.coupons_management.Repository.CouponRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Redemption counts of the coupons, held in memory so redeeming never locks the coupon row.
+// Each coupon has a budget reserved with a CAS loop on its counter, and each (coupon, user) pair
+// with a per-user limit has its own. The increments are written to the database in one transaction
+// per flush (write-behind), so a flash sale on one coupon costs one UPDATE per flush interval.
+// Counts are loaded from the database the first time a coupon or user is seen, and again on the first
+// reservation after each flush so that redemptions flushed by other instances are counted. A user's
+// budget is dropped once a flush leaves nothing pending on it, so only recently active users are held.
+// Limits are therefore enforced per instance between flushes: with N instances a limit can be
+// overshot by up to N times the redemptions each instance makes in one flush interval.
+@Component
+public class CouponRedemptions {
+
+    private final CouponRepository couponRepository;
+    private final CouponRedemptionRepository redemptionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private static final Logger logger = LoggerFactory.getLogger(CouponRedemptions.class);
+
+    private final ConcurrentHashMap<Long, Budget> budgets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CouponRedemption.Key, Budget> userBudgets = new ConcurrentHashMap<>();
+    // Held by flush while it writes to the database. Reservations never wait for it: a request may
+    // already hold a connection (open session in view) that the flush is waiting for.
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long flushes; // completed flushes, written under the lock
+
+    public CouponRedemptions(CouponRepository couponRepository, CouponRedemptionRepository redemptionRepository,
+                             PlatformTransactionManager transactionManager) {
+        this.couponRepository = couponRepository;
+        this.redemptionRepository = redemptionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Reserve one redemption of the coupon for the user, false when a limit is reached.
+    // Users are only counted when the coupon has a per-user limit.
+    public boolean reserve(Coupon coupon, String userId) {
+        CouponRedemption.Key key = null;
+        if (coupon.getMaxRedemptionsPerUser() != null) {
+            key = new CouponRedemption.Key(coupon.getId(), userId);
+            if (!reserveUser(key, coupon.getMaxRedemptionsPerUser())) {
+                return false;
+            }
+        }
+        // The cached coupon's count may be minutes old, a new budget is reloaded before its first use
+        Budget budget = budgets.computeIfAbsent(coupon.getId(), id -> new Budget(coupon.getRedemptionCount(), true));
+        if (budget.stale) {
+            refresh(budget, () -> couponRepository.findRedemptionCount(coupon.getId()).orElse(coupon.getRedemptionCount()));
+        }
+        if (!budget.tryReserve(coupon.getMaxRedemptions() != null ? coupon.getMaxRedemptions() : Long.MAX_VALUE)) {
+            if (key != null) {
+                releaseUser(key);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // Give back a reserved redemption that was not used
+    public void release(Coupon coupon, String userId) {
+        Budget budget = budgets.get(coupon.getId());
+        if (budget != null) {
+            budget.release();
+        }
+        if (coupon.getMaxRedemptionsPerUser() != null) {
+            releaseUser(new CouponRedemption.Key(coupon.getId(), userId));
+        }
+    }
+
+    // User budgets are reserved and released inside the map, so a flush never drops one that a
+    // reservation is being counted on
+    private boolean reserveUser(CouponRedemption.Key key, long limit) {
+        while (true) {
+            Budget budget = userBudget(key);
+            if (budget.stale) {
+                refresh(budget, () -> loadUserCount(key));
+            }
+            Boolean[] reserved = new Boolean[1];
+            userBudgets.computeIfPresent(key, (k, current) -> {
+                if (current == budget) {
+                    reserved[0] = budget.tryReserve(limit);
+                }
+                return current;
+            });
+            if (reserved[0] != null) {
+                return reserved[0];
+            }
+            // Dropped by a flush since it was read, load it again
+        }
+    }
+
+    private Budget userBudget(CouponRedemption.Key key) {
+        Budget budget = userBudgets.get(key);
+        if (budget != null) {
+            return budget;
+        }
+        // Loaded outside computeIfAbsent, which would hold a map bin locked for the query
+        long flushed = flushes;
+        Budget loaded = new Budget(loadUserCount(key), false);
+        Budget existing = userBudgets.putIfAbsent(key, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (flushes != flushed) {
+            loaded.stale = true; // the count may have been read before the flush committed
+        }
+        return loaded;
+    }
+
+    // A budget dropped since the reservation was made comes back stale, its count is loaded on next use.
+    // Nothing is kept for a coupon deleted meanwhile.
+    private void releaseUser(CouponRedemption.Key key) {
+        userBudgets.compute(key, (k, current) -> {
+            if (current == null && !budgets.containsKey(k.getCouponId())) {
+                return null;
+            }
+            Budget budget = current != null ? current : new Budget(0, true);
+            budget.release();
+            return budget;
+        });
+    }
+
+    private long loadUserCount(CouponRedemption.Key key) {
+        return redemptionRepository.findById(key).map(CouponRedemption::getRedemptionCount).orElse(0L);
+    }
+
+    // Reload a budget from its stored count plus what this instance has not flushed yet.
+    // Locked against flush so the stored count does not move between the read and the reload;
+    // while a flush runs the budget stays stale and a later reservation reloads it.
+    private void refresh(Budget budget, LongSupplier storedCount) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (budget.stale) {
+                budget.reload(storedCount.getAsLong());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Write the redemptions counted since the last flush to the database
+    @Scheduled(fixedDelayString = "${coupons.redemptions.flush-interval-ms:1000}")
+    public void flush() {
+        lock.lock();
+        try {
+            flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        Map<Long, Long> couponCounts = drain(budgets);
+        Map<CouponRedemption.Key, Long> userCounts = drain(userBudgets);
+        // Other instances may have flushed meanwhile, every budget is reloaded when next used
+        budgets.values().forEach(budget -> budget.stale = true);
+        userBudgets.values().forEach(budget -> budget.stale = true);
+        if (!couponCounts.isEmpty() || !userCounts.isEmpty()) {
+            write(couponCounts, userCounts);
+        }
+        flushes++;
+        // A stale user budget with nothing pending would only be reloaded, so it is dropped instead
+        userBudgets.forEach((key, budget) ->
+                userBudgets.computeIfPresent(key, (k, current) -> current.pending.sum() != 0 ? current : null));
+    }
+
+    private void write(Map<Long, Long> couponCounts, Map<CouponRedemption.Key, Long> userCounts) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                couponCounts.forEach(couponRepository::addRedemptions);
+                userCounts.forEach((key, count) -> {
+                    if (redemptionRepository.addRedemptions(key.getCouponId(), key.getUserId(), count) == 0) {
+                        redemptionRepository.save(new CouponRedemption(key.getCouponId(), key.getUserId(), count));
+                    }
+                });
+            });
+            logger.debug("Flushed redemptions of {} coupons and {} users", couponCounts.size(), userCounts.size());
+        } catch (RuntimeException e) {
+            // Put the counts back so the next flush writes them
+            couponCounts.forEach((id, count) -> restore(budgets.get(id), count));
+            userCounts.forEach((key, count) -> restore(userBudgets.get(key), count));
+            logger.error("Flushing coupon redemptions failed, retrying on the next flush", e);
+        }
+    }
+
+    private static <K> Map<K, Long> drain(Map<K, Budget> source) {
+        Map<K, Long> counts = new HashMap<>();
+        source.forEach((key, budget) -> {
+            long pending = budget.pending.sum();
+            if (pending != 0) {
+                // Subtracting what was read keeps the increments made meanwhile for the next flush
+                budget.pending.add(-pending);
+                budget.stored += pending;
+                counts.put(key, pending);
+            }
+        });
+        return counts;
+    }
+
+    private static void restore(Budget budget, long count) {
+        if (budget != null) {
+            budget.pending.add(count);
+            budget.stored -= count;
+        }
+    }
+
+    // Forget the counters of a deleted coupon along with its stored per-user counts
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponChanged(CouponChangedEvent event) {
+        if (event.getChangeType() != ChangeType.DELETED) {
+            return;
+        }
+        lock.lock();
+        try {
+            budgets.remove(event.getCouponId());
+            userBudgets.keySet().removeIf(key -> key.getCouponId().equals(event.getCouponId()));
+            if (event.isReplicated()) {
+                return; // the instance that deleted the coupon removed the rows
+            }
+            transactionTemplate.executeWithoutResult(status -> redemptionRepository.deleteByCoupon(event.getCouponId()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private static final class Budget {
+
+        private final AtomicLong used; // stored + pending
+        private final LongAdder pending = new LongAdder(); // counted but not flushed yet
+        private long stored; // in the database as of the last load or flush, guarded by the lock
+        private volatile boolean stale; // a flush ran since the count was loaded
+
+        Budget(long stored, boolean stale) {
+            this.used = new AtomicLong(stored);
+            this.stored = stored;
+            this.stale = stale;
+        }
+
+        boolean tryReserve(long limit) {
+            long current;
+            do {
+                current = used.get();
+                if (current >= limit) {
+                    return false;
+                }
+            } while (!used.compareAndSet(current, current + 1));
+            pending.increment();
+            return true;
+        }
+
+        // Moves used by the change of the stored count only, so reservations made meanwhile are kept
+        void reload(long current) {
+            used.addAndGet(current - stored);
+            stored = current;
+            stale = false;
+        }
+
+        void release() {
+            used.decrementAndGet();
+            pending.decrement();
+        }
+    }
+}
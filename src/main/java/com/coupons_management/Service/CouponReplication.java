@@ -0,0 +1,255 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Engine.CouponRule;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Entity.CouponChange;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponChangedEvent.ChangeType;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.coupons_management.Repository.CouponChangeRepository;
+import com.coupons_management.Repository.CouponRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps the catalog of this instance in step with the writes made by the other instances.
+// Every coupon write is logged in the coupon_changes table in its own transaction. Each instance
+// polls the log for the entries after the last one it applied (its catalog version), reloads only
+// the coupons they name and publishes them as replicated CouponChangedEvents, so the catalog and
+// the caches update exactly as for a local write.
+// With a snapshot path set, the active coupons and their version are also written to a binary file;
+// a restarted instance reads that file and replays only the log entries written since, instead of
+// loading every coupon from the database.
+@Component
+public class CouponReplication {
+
+    private final CouponCatalog couponCatalog;
+    private final CouponRepository couponRepository;
+    private final CouponChangeRepository changeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Path snapshotPath; // null when snapshots are disabled
+    private final Duration grace;
+    private final Duration retention;
+    private static final Logger logger = LoggerFactory.getLogger(CouponReplication.class);
+
+    // Held across the log queries; with virtual threads enabled the sync task runs on one, and a
+    // monitor held while waiting for a connection would pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Log entries written by this instance, not replayed again; kept until they leave the grace window
+    private final Map<Long, LocalDateTime> ownChanges = new ConcurrentHashMap<>();
+    // Entries read inside the grace window, so a re-read entry is not applied twice
+    private final Map<Long, LocalDateTime> recentChanges = new HashMap<>();
+
+    private volatile long version = -1; // id of the last applied log entry, -1 until started
+    private LocalDateTime syncedAt;
+
+    public CouponReplication(CouponCatalog couponCatalog, CouponRepository couponRepository,
+                             CouponChangeRepository changeRepository, ApplicationEventPublisher eventPublisher,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${coupons.catalog.snapshot-path:}") String snapshotPath,
+                             @Value("${coupons.catalog.sync-grace:10s}") Duration grace,
+                             @Value("${coupons.catalog.change-retention:1d}") Duration retention) {
+        this.couponCatalog = couponCatalog;
+        this.couponRepository = couponRepository;
+        this.changeRepository = changeRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.grace = grace;
+        this.retention = retention;
+    }
+
+    // Version of the catalog: id of the last change log entry applied, -1 before start
+    public long getVersion() {
+        return version;
+    }
+
+    // Log a local write in the transaction that makes it, the other instances pick it up once committed
+    @EventListener
+    public void onCouponChanged(CouponChangedEvent event) {
+        if (!event.isReplicated()) {
+            logChange(event.getCouponId());
+        }
+    }
+
+    // A bulk import is logged as one entry telling the other instances to reload everything
+    @EventListener
+    public void onCouponsImported(CouponsImportedEvent event) {
+        if (!event.isReplicated()) {
+            logChange(null);
+        }
+    }
+
+    private void logChange(Long couponId) {
+        LocalDateTime now = LocalDateTime.now();
+        CouponChange change = changeRepository.save(new CouponChange(couponId, now));
+        ownChanges.put(change.getId(), now);
+    }
+
+    // Load the catalog from the snapshot file when there is a usable one, then start following the log
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        lock.lock();
+        try {
+            if (version >= 0) {
+                return;
+            }
+            CatalogSnapshot snapshot = readSnapshot();
+            if (snapshot != null) {
+                couponCatalog.install(snapshot.getCoupons());
+                version = snapshot.getVersion();
+                syncedAt = snapshot.getSyncedAt();
+                logger.info("Coupon catalog loaded from snapshot {} at version {} with {} coupons",
+                        snapshotPath, version, snapshot.getCoupons().size());
+                sync();
+            } else {
+                // The catalog is loaded lazily from the database, which already holds every change logged so far
+                Long lastId = changeRepository.findLastId();
+                version = lastId != null ? lastId : 0;
+                syncedAt = LocalDateTime.now();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CatalogSnapshot readSnapshot() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            CatalogSnapshot snapshot = CatalogSnapshot.read(snapshotPath);
+            // Entries after a stale snapshot may already be pruned from the log
+            if (snapshot.getSyncedAt().isBefore(LocalDateTime.now().minus(retention).plus(grace))) {
+                logger.info("Ignoring coupon catalog snapshot older than the change log retention");
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            logger.warn("Could not read the coupon catalog snapshot, loading from the database", e);
+            return null;
+        }
+    }
+
+    // Apply the log entries written since the last sync
+    @Scheduled(fixedDelayString = "${coupons.catalog.sync-interval-ms:1000}")
+    public void sync() {
+        lock.lock();
+        try {
+            if (version < 0) {
+                return;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            // Entries are numbered when written but become visible when committed, so an entry below
+            // the version can still show up; the ones changed within the grace window are read again
+            LocalDateTime since = syncedAt.minus(grace);
+            List<CouponChange> changes = changeRepository.findChangesSince(version, since);
+            syncedAt = now;
+            recentChanges.values().removeIf(changedAt -> changedAt.isBefore(since));
+            ownChanges.values().removeIf(changedAt -> changedAt.isBefore(since));
+
+            boolean reloadAll = false;
+            Set<Long> couponIds = new LinkedHashSet<>();
+            long lastId = version;
+            for (CouponChange change : changes) {
+                lastId = Math.max(lastId, change.getId());
+                if (recentChanges.put(change.getId(), change.getChangedAt()) != null || ownChanges.remove(change.getId()) != null) {
+                    continue;
+                }
+                if (change.getCouponId() == null) {
+                    reloadAll = true;
+                } else {
+                    couponIds.add(change.getCouponId());
+                }
+            }
+
+            if (reloadAll) {
+                eventPublisher.publishEvent(new CouponsImportedEvent(0, true));
+            } else if (!couponIds.isEmpty()) {
+                applyChanges(couponIds);
+            }
+            version = lastId;
+            if (reloadAll || !couponIds.isEmpty()) {
+                logger.debug("Coupon catalog synced to version {}, {} coupons changed", version, reloadAll ? "all" : couponIds.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void applyChanges(Set<Long> couponIds) {
+        Map<Long, Coupon> coupons = new HashMap<>();
+        for (Coupon coupon : couponRepository.findAllById(couponIds)) {
+            coupons.put(coupon.getId(), coupon);
+        }
+        for (Long couponId : couponIds) {
+            Coupon coupon = coupons.get(couponId);
+            eventPublisher.publishEvent(coupon != null
+                    ? new CouponChangedEvent(ChangeType.UPDATED, couponId, coupon.getVersion(), coupon, true)
+                    : new CouponChangedEvent(ChangeType.DELETED, couponId, null, null, true));
+        }
+    }
+
+    // Write the active coupons and the version they are at to the snapshot file, and prune the log
+    @Scheduled(fixedDelayString = "${coupons.catalog.snapshot-interval-ms:60000}",
+            initialDelayString = "${coupons.catalog.snapshot-interval-ms:60000}")
+    public void writeSnapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+        long snapshotVersion;
+        LocalDateTime snapshotSyncedAt;
+        List<Coupon> coupons = new ArrayList<>();
+        lock.lock();
+        try {
+            if (version < 0) {
+                return;
+            }
+            // Taken together with the version, so the file holds every change up to it
+            snapshotVersion = version;
+            snapshotSyncedAt = syncedAt;
+            for (CouponRule rule : couponCatalog.getIndex().getRules()) {
+                coupons.add(rule.getCoupon());
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            CatalogSnapshot.write(snapshotPath, snapshotVersion, snapshotSyncedAt, coupons);
+            logger.debug("Coupon catalog snapshot written at version {} with {} coupons", snapshotVersion, coupons.size());
+        } catch (IOException e) {
+            logger.error("Writing the coupon catalog snapshot failed", e);
+        }
+        transactionTemplate.executeWithoutResult(status ->
+                changeRepository.deleteChangedBefore(LocalDateTime.now().minus(retention)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeSnapshot();
+    }
+}
@@ -0,0 +1,135 @@
+package com.coupons_management.Service;
+
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Pre-serialized JSON bodies of the coupon list and of single coupons, with their ETags.
+// Polling clients get the same bytes back, or a 304 when they send the ETag, without the coupons
+// being loaded or serialized again. Bodies are regenerated only after coupons change.
+// Redemption counts change without the coupon changing, so the bodies leave them out.
+@Component
+public class CouponResponseCache {
+
+    private final CouponService couponService;
+    private final ObjectWriter objectWriter;
+    private final Cache<Long, CouponBody> couponBodies;
+
+    // Bumped on every change; a list body serialized before the last change is stale
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock catalogLock = new ReentrantLock(); // not a monitor, the holder waits on the database
+    private volatile CatalogBody catalogBody;
+
+    public CouponResponseCache(CouponService couponService, ObjectMapper objectMapper, CouponMetrics couponMetrics,
+                               @Value("${coupons.cache.maximum-size:10000}") long maximumSize) {
+        this.couponService = couponService;
+        this.objectWriter = objectMapper.copy().addMixIn(Coupon.class, WithoutRedemptionCount.class).writer();
+        this.couponBodies = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+        couponMetrics.monitorCache(couponBodies, "coupons.responses");
+    }
+
+    // Body of GET /coupons
+    public SerializedBody getCatalog() {
+        CatalogBody current = catalogBody;
+        if (current != null && current.generation == generation.get()) {
+            return current.body;
+        }
+        // One request regenerates the body, the others wait for it instead of all loading the catalog
+        catalogLock.lock();
+        try {
+            current = catalogBody;
+            long expected = generation.get();
+            if (current != null && current.generation == expected) {
+                return current.body;
+            }
+            SerializedBody body = serialize(couponService.getAllCoupons());
+            catalogBody = new CatalogBody(expected, body);
+            return body;
+        } finally {
+            catalogLock.unlock();
+        }
+    }
+
+    // Body of GET /coupons/{id}, empty when the coupon does not exist.
+    // The coupon comes from the coupon cache and a body is reused only while it was serialized
+    // from that same cached instance, so it can never outlive the cached coupon.
+    public Optional<SerializedBody> getCoupon(Long id) {
+        Optional<Coupon> coupon = couponService.getCouponById(id);
+        if (coupon.isEmpty()) {
+            return Optional.empty();
+        }
+        CouponBody cached = couponBodies.getIfPresent(id);
+        if (cached != null && cached.source == coupon.get()) {
+            return Optional.of(cached.body);
+        }
+        SerializedBody body = serialize(coupon.get());
+        couponBodies.put(id, new CouponBody(coupon.get(), body));
+        return Optional.of(body);
+    }
+
+    private SerializedBody serialize(Object value) {
+        try {
+            byte[] bytes = objectWriter.writeValueAsBytes(value);
+            return new SerializedBody(bytes, "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize coupons", e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCouponChanged(CouponChangedEvent event) {
+        generation.incrementAndGet();
+        couponBodies.invalidate(event.getCouponId());
+    }
+
+    @EventListener(CouponsImportedEvent.class)
+    public void onCouponsImported() {
+        generation.incrementAndGet();
+        couponBodies.invalidateAll();
+    }
+
+    @JsonIgnoreProperties("redemptionCount")
+    private abstract static class WithoutRedemptionCount {
+    }
+
+    private record CatalogBody(long generation, SerializedBody body) {
+    }
+
+    private record CouponBody(Coupon source, SerializedBody body) {
+    }
+
+    // JSON bytes of a response with the strong ETag of their content
+    public static final class SerializedBody {
+
+        private final byte[] bytes;
+        private final String etag;
+
+        private SerializedBody(byte[] bytes, String etag) {
+            this.bytes = bytes;
+            this.etag = etag;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
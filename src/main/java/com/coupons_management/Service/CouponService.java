@@ -1,66 +1,165 @@
 package com.coupons_management.Service;
 
+import com.coupons_management.DTO.CouponDiscount;
+import com.coupons_management.DTO.CouponRanking;
+import com.coupons_management.DTO.CouponStack;
+import com.coupons_management.DTO.CouponSummary;
+import com.coupons_management.DTO.CouponTier;
 import com.coupons_management.Entity.Cart;
 import com.coupons_management.Entity.CartItem;
 import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Engine.CartDiscounts;
+import com.coupons_management.Engine.CartFingerprint;
+import com.coupons_management.Engine.CartLedger;
+import com.coupons_management.Engine.CartView;
+import com.coupons_management.Engine.CartWiseRule;
+import com.coupons_management.Engine.CouponIndex;
+import com.coupons_management.Engine.CouponRule;
+import com.coupons_management.Engine.CouponStacker;
+import com.coupons_management.Engine.EvaluationStats;
+import com.coupons_management.Engine.Money;
+import com.coupons_management.Engine.StackResult;
 import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponChangedEvent.ChangeType;
 import com.coupons_management.Exception.CouponNotFoundException;
+import com.coupons_management.Exception.InvalidCouponException;
+import com.coupons_management.Exception.RedemptionLimitException;
 import com.coupons_management.Repository.CouponRepository;
+import com.coupons_management.Service.CouponCache.CachedCoupon;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class CouponService {
 
     private final CouponRepository couponRepository;
+    private final CouponCatalog couponCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CouponMetrics couponMetrics;
+    private final CouponRedemptions couponRedemptions;
+    private final CouponCache couponCache;
+    private final CartEvaluationCache evaluationCache;
     private static final Logger logger = LoggerFactory.getLogger(CouponService.class);
 
-    public CouponService(CouponRepository couponRepository) {
+    public CouponService(CouponRepository couponRepository, CouponCatalog couponCatalog,
+                         ApplicationEventPublisher eventPublisher, CouponMetrics couponMetrics,
+                         CouponRedemptions couponRedemptions, CouponCache couponCache,
+                         CartEvaluationCache evaluationCache) {
         this.couponRepository = couponRepository;
+        this.couponCatalog = couponCatalog;
+        this.eventPublisher = eventPublisher;
+        this.couponMetrics = couponMetrics;
+        this.couponRedemptions = couponRedemptions;
+        this.couponCache = couponCache;
+        this.evaluationCache = evaluationCache;
     }
 
     // Create a new coupon and save it to the database
+    @Transactional
     public Coupon createCoupon(Coupon coupon) {
         logger.info("Creating a new coupon: {}", coupon);
-        return couponRepository.save(coupon);
+        coupon.setVersion(null); // always inserted as a new row
+        coupon.setRedemptionCount(0);
+        Coupon savedCoupon = couponRepository.saveAndFlush(coupon);
+        publishChange(ChangeType.CREATED, savedCoupon);
+        return savedCoupon;
     }
 
     // Fetch all coupons from the database
+    @Transactional(readOnly = true)
     public List<Coupon> getAllCoupons() {
         logger.info("Fetching all coupons from the database");
         return couponRepository.findAll();
     }
 
-    // Fetch a specific coupon by its ID
+    // Fetch one page of coupons ordered by id
+    @Transactional(readOnly = true)
+    public List<Coupon> getCouponsPage(int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Page must be >= 0 and size >= 1");
+        }
+        logger.info("Fetching coupons page {} of size {}", page, size);
+        return couponRepository.findAllBy(PageRequest.of(page, size, Sort.by("id"))).getContent();
+    }
+
+    // Fetch a specific coupon by its ID, served from the coupon cache
     public Optional<Coupon> getCouponById(Long id) {
-        logger.info("Fetching coupon with id: {}", id);
-        return couponRepository.findById(id);
+        logger.debug("Fetching coupon with id: {}", id);
+        return couponCache.get(id).map(CachedCoupon::getCoupon);
+    }
+
+    // Fetch the non-expired coupons, optionally of a single type
+    public List<Coupon> getActiveCoupons(CouponType type) {
+        logger.info("Fetching active coupons of type: {}", type);
+        LocalDateTime now = LocalDateTime.now();
+        return type == null ? couponRepository.findActive(now) : couponRepository.findActiveByType(type, now);
+    }
+
+    // Fetch coupon summaries (no details), optionally only the non-expired ones of a single type
+    public List<CouponSummary> getCouponSummaries(boolean activeOnly, CouponType type) {
+        logger.info("Fetching coupon summaries, active only: {}, type: {}", activeOnly, type);
+        if (!activeOnly && type == null) {
+            return couponRepository.findAllSummaries();
+        }
+        // A type filter only makes sense on the active set, expired coupons are never applicable
+        return couponRepository.findActiveSummaries(type, LocalDateTime.now());
     }
 
-    // Update an existing coupon by its ID
+    // Update an existing coupon by its ID.
+    // When the request carries a version it must match the stored one, otherwise the update
+    // was made on a stale copy and is rejected; concurrent updates are caught by the @Version check.
+    @Transactional
     public Coupon updateCoupon(Long id, Coupon coupon) {
         logger.info("Updating coupon with id: {}", id);
         Coupon existingCoupon = couponRepository.findById(id)
                 .orElseThrow(() -> new CouponNotFoundException("Coupon not found with id " + id));
 
+        if (coupon.getVersion() != null && !coupon.getVersion().equals(existingCoupon.getVersion())) {
+            logger.warn("Rejecting update of coupon with id: {}, version {} is stale", id, coupon.getVersion());
+            throw new ObjectOptimisticLockingFailureException(Coupon.class, id);
+        }
+
         // Update the fields of the existing coupon
         existingCoupon.setType(coupon.getType());
         existingCoupon.setDetails(coupon.getDetails());
-        logger.info("Coupon updated successfully: {}", existingCoupon);
-        return couponRepository.save(existingCoupon);
+        existingCoupon.setExclusive(coupon.isExclusive());
+        existingCoupon.setStackingGroup(coupon.getStackingGroup());
+        existingCoupon.setMaxRedemptions(coupon.getMaxRedemptions());
+        existingCoupon.setMaxRedemptionsPerUser(coupon.getMaxRedemptionsPerUser());
+        Coupon savedCoupon = couponRepository.saveAndFlush(existingCoupon);
+        logger.info("Coupon updated successfully: {}", savedCoupon);
+        publishChange(ChangeType.UPDATED, savedCoupon);
+        return savedCoupon;
     }
 
-    // Delete a coupon by its ID
+    // Delete a coupon by its ID, unknown ids are ignored
+    @Transactional
     public void deleteCoupon(Long id) {
         logger.info("Deleting coupon with id: {}", id);
-        couponRepository.deleteById(id);
+        couponRepository.findById(id).ifPresent(coupon -> {
+            couponRepository.delete(coupon);
+            eventPublisher.publishEvent(new CouponChangedEvent(ChangeType.DELETED, id, coupon.getVersion(), null));
+        });
+    }
+
+    private void publishChange(ChangeType changeType, Coupon coupon) {
+        eventPublisher.publishEvent(new CouponChangedEvent(changeType, coupon.getId(), coupon.getVersion(), coupon));
     }
 
     // Fetch applicable coupons for the given cart based on the coupon type and conditions
@@ -70,176 +169,297 @@ public class CouponService {
             throw new IllegalArgumentException("Cart cannot be null");
         }
 
-        List<Coupon> applicableCoupons = new ArrayList<>();
-        logger.info("Checking for applicable coupons for the cart");
+        logger.debug("Checking for applicable coupons for the cart");
+        Timer.Sample sample = couponMetrics.start();
+        CouponIndex index = couponCatalog.getIndex();
+        if (index.isEmpty()) {
+            couponMetrics.recordApplicable(sample, 0, null);
+            return new ArrayList<>();
+        }
 
-//        to check the expiration date when determining applicable coupons:
-        for (Coupon coupon : couponRepository.findAll()) {
-            // Skip expired coupons
-            if (coupon.getExpirationDate() != null && coupon.getExpirationDate().isBefore(LocalDateTime.now())) {
-                logger.debug("Skipping expired coupon: {}", coupon);
-                continue;
-            }
+        // Ensure the cart has items
+        List<CartItem> cartItems = cart.getItems();
+        if (cartItems == null || cartItems.isEmpty()) {
+            logger.warn("No items found in the cart. No coupons applicable.");
+            throw new IllegalArgumentException("Cart items cannot be null or empty");
+        }
 
-            // Ensure the cart has items
-            List<CartItem> cartItems = cart.getItems();
-            if (cartItems == null || cartItems.isEmpty()) {
-                logger.warn("No items found in the cart. No coupons applicable.");
-                throw new IllegalArgumentException("Cart items cannot be null or empty");
-            }
+        // Only the coupons indexed under the cart's products and total are checked,
+        // and a cart posted again while the index is unchanged reuses the result.
+        // Reused results scanned nothing, only evaluations count towards the scan metrics.
+        EvaluationStats stats = new EvaluationStats();
+        boolean[] evaluated = new boolean[1];
+        List<Coupon> matched = evaluationCache.getApplicable(CartFingerprint.of(cart), index.getGeneration(), () -> {
+            evaluated[0] = true;
+            return index.findApplicable(CartView.of(cart), stats).stream()
+                    .map(CouponRule::getCoupon)
+                    .toList();
+        });
+        List<Coupon> applicableCoupons = new ArrayList<>(matched);
+        couponMetrics.recordApplicable(sample, cartItems.size(), evaluated[0] ? stats : null);
+
+        logger.debug("Total applicable coupons: {}", applicableCoupons.size());
+        return applicableCoupons;
+    }
 
-            // CART_WISE coupon application logic
-            if (coupon.getType() == CouponType.CART_WISE) {
-                if (coupon.getDetails().containsKey("threshold")) {
-                    double threshold = ((Number) coupon.getDetails().get("threshold")).doubleValue();
-                    if (cart.getTotalAmount() >= threshold) {
-                        applicableCoupons.add(coupon);
-                        logger.info("CART_WISE coupon applicable: {}", coupon);
-                    }
-                }
-            }
+    // Streaming variant of getApplicableCoupons: each coupon goes to the consumer as soon as it matches,
+    // so nothing is collected and the caller can write it out right away. Returns the number of matches.
+    public int forEachApplicableCoupon(Cart cart, Consumer<Coupon> consumer) {
+        return forEachApplicableRule(streamedCart(cart), rule -> consumer.accept(rule.getCoupon()));
+    }
 
-            // PRODUCT_WISE coupon application logic
-            else if (coupon.getType() == CouponType.PRODUCT_WISE) {
-                if (coupon.getDetails().containsKey("product_id") && coupon.getDetails().containsKey("discount")) {
-                    long productId = ((Number) coupon.getDetails().get("product_id")).longValue();
-                    for (CartItem item : cartItems) {
-                        if (item.getProduct().getProductId() == productId) {
-                            applicableCoupons.add(coupon);
-                            logger.info("PRODUCT_WISE coupon applicable for product ID: {}", productId);
-                            break;
-                        }
-                    }
-                }
-            }
+    // Compact streaming variant: only the id, type and discount each matching coupon would give the cart.
+    // Discounts are computed read-only, the cart is left unchanged.
+    public int forEachApplicableDiscount(Cart cart, Consumer<CouponDiscount> consumer) {
+        CartView view = streamedCart(cart);
+        CartLedger ledger = CartLedger.of(view);
+        return forEachApplicableRule(view, rule -> consumer.accept(
+                new CouponDiscount(rule.getCoupon().getId(), rule.getType(), Money.toAmount(rule.discount(ledger)))));
+    }
 
-            // BxGy coupon application logic
-            else if (coupon.getType() == CouponType.BxGy) {
-                if (coupon.getDetails().containsKey("buy_products") && coupon.getDetails().containsKey("get_products")) {
-                    List<Map<String, Object>> buyProducts = (List<Map<String, Object>>) coupon.getDetails().get("buy_products");
-                    boolean allProductsMatched = true;
-
-                    // Ensure all required products are in the cart
-                    for (Map<String, Object> buyProduct : buyProducts) {
-                        long buyProductId = ((Number) buyProduct.get("product_id")).longValue();
-                        int requiredQuantity = ((Number) buyProduct.get("quantity")).intValue();
-                        boolean productMatched = false;
-
-                        for (CartItem item : cartItems) {
-                            if (item.getProduct().getProductId() == buyProductId && item.getQuantity() >= requiredQuantity) {
-                                productMatched = true;
-                                break;
-                            }
-                        }
-
-                        if (!productMatched) {
-                            allProductsMatched = false;
-                            break;
-                        }
-                    }
+    // Checked before the first match is emitted, a streamed response cannot turn into an error afterwards
+    private CartView streamedCart(Cart cart) {
+        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+        return CartView.of(cart);
+    }
+
+    private int forEachApplicableRule(CartView view, Consumer<CouponRule> consumer) {
+        Timer.Sample sample = couponMetrics.start();
+        EvaluationStats stats = new EvaluationStats();
+        int[] matched = new int[1];
+        couponCatalog.getIndex().forEachApplicable(view, stats, rule -> {
+            matched[0]++;
+            consumer.accept(rule);
+        });
+        couponMetrics.recordApplicable(sample, view.getItemCount(), stats);
+
+        logger.debug("Streamed {} applicable coupons", matched[0]);
+        return matched[0];
+    }
+
+    // Fetch the ids of the applicable coupons for each cart, in the order of the carts.
+    // The index is read once for the whole batch and the carts are evaluated in parallel.
+    public List<List<Long>> getApplicableCouponIds(List<Cart> carts) {
+        if (carts == null) {
+            throw new IllegalArgumentException("Carts cannot be null");
+        }
+
+        logger.debug("Checking for applicable coupons for a batch of {} carts", carts.size());
+        CouponIndex index = couponCatalog.getIndex();
 
-                    // Apply the coupon if all buy products are matched
-                    if (allProductsMatched) {
-                        applicableCoupons.add(coupon);
-                        logger.info("BxGy coupon applicable: {}", coupon);
+        return carts.parallelStream()
+                .map(cart -> {
+                    // Carts without items cannot match any coupon
+                    if (index.isEmpty() || cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+                        return List.<Long>of();
                     }
-                }
-            }
+                    EvaluationStats stats = new EvaluationStats();
+                    List<Long> couponIds = index.findApplicable(CartView.of(cart), stats).stream()
+                            .map(rule -> rule.getCoupon().getId())
+                            .toList();
+                    couponMetrics.recordEvaluation(cart.getItems().size(), stats);
+                    return couponIds;
+                })
+                .toList();
+    }
+
+    // Rank the applicable coupons of the cart by the discount each would give, best first.
+    // Discounts are computed read-only, the cart is left unchanged.
+    public CouponRanking rankCoupons(Cart cart) {
+        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
         }
 
-        logger.info("Total applicable coupons: {}", applicableCoupons.size());
-        return applicableCoupons;
+        Timer.Sample sample = couponMetrics.start();
+        EvaluationStats stats = new EvaluationStats();
+        CartView view = CartView.of(cart);
+        CartLedger ledger = CartLedger.of(view);
+        List<CouponDiscount> discounts = new ArrayList<>();
+        for (CouponRule rule : couponCatalog.getIndex().findApplicable(view, stats)) {
+            discounts.add(new CouponDiscount(rule.getCoupon().getId(), rule.getType(), Money.toAmount(rule.discount(ledger))));
+        }
+        discounts.sort(Comparator.comparingDouble(CouponDiscount::getDiscount).reversed());
+        couponMetrics.recordRank(sample, cart.getItems().size(), stats);
+
+        logger.debug("Ranked {} applicable coupons for the cart", discounts.size());
+        return new CouponRanking(discounts.isEmpty() ? null : discounts.get(0), discounts);
+    }
+
+    // CART_WISE coupons the cart does not reach yet, closest first, with the amount left to spend for each.
+    // Served by the same threshold search as the applicable coupons.
+    public List<CouponTier> getNextTiers(Cart cart, int limit) {
+        if (cart == null) {
+            throw new IllegalArgumentException("Cart cannot be null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be >= 1");
+        }
+
+        CartView view = CartView.of(cart);
+        long total = view.getTotalCents();
+        List<CouponTier> tiers = new ArrayList<>();
+        for (CartWiseRule rule : couponCatalog.getIndex().getThresholdIndex().nextTiers(view.getTotalAmount(), limit)) {
+            double amountToSpend = Money.toAmount(Money.toCents(rule.getThreshold()) - total);
+            tiers.add(new CouponTier(rule.getCoupon().getId(), rule.getThreshold(), rule.getDiscount(), amountToSpend));
+        }
+        logger.debug("Found {} next tiers for the cart", tiers.size());
+        return tiers;
     }
 
     // Apply a coupon to a cart and update the cart total or item discounts accordingly
     public Cart applyCoupon(Long id, Cart cart) {
-        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+        if (cart == null) {
             logger.error("Cart is empty or not initialized");
             throw new IllegalArgumentException("Cart is empty or not initialized");
         }
 
-        Coupon coupon = couponRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Coupon not found"));
-
-        Map<String, Object> details = coupon.getDetails();
-        logger.info("Applying coupon with id: {} to cart", id);
-
-        // Apply the coupon based on its type
-        switch (coupon.getType()) {
-            case CART_WISE:
-                if (details != null && details.containsKey("discount")) {
-                    double discount = ((Number) details.get("discount")).doubleValue();
-                    double totalDiscount = cart.getTotalPrice() * (discount / 100);
-                    cart.setTotalPrice(cart.getTotalPrice() - totalDiscount);
-                    logger.info("Applied CART_WISE discount: {}%", discount);
-                }
-                break;
-
-            case PRODUCT_WISE:
-                if (details != null && details.containsKey("product_id") && details.containsKey("discount")) {
-                    long productId = ((Number) details.get("product_id")).longValue();
-                    double discount = ((Number) details.get("discount")).doubleValue();
-
-                    for (CartItem item : cart.getItems()) {
-                        if (item.getProduct().getProductId() == productId) {
-                            double itemDiscount = item.getQuantity() * (discount / 100) * item.getProduct().getPrice();
-                            item.setTotalDiscount(itemDiscount);
-                            cart.setTotalPrice(cart.getTotalPrice() - itemDiscount);
-                            logger.info("Applied PRODUCT_WISE discount for product ID: {}", productId);
-                            break;
-                        }
-                    }
-                }
-                break;
-
-            case BxGy:
-                if (details != null && details.containsKey("get_products") && details.containsKey("buy_products")) {
-                    List<Map<String, Object>> buyProducts = (List<Map<String, Object>>) details.get("buy_products");
-                    List<Map<String, Object>> getProducts = (List<Map<String, Object>>) details.get("get_products");
-
-                    boolean allProductsMatched = true;
-
-                    // Check if all required buy products are in the cart
-                    for (Map<String, Object> buyProduct : buyProducts) {
-                        long buyProductId = ((Number) buyProduct.get("product_id")).longValue();
-                        int requiredQuantity = ((Number) buyProduct.get("quantity")).intValue();
-                        boolean productMatched = false;
-
-                        for (CartItem item : cart.getItems()) {
-                            if (item.getProduct() != null && item.getProduct().getProductId() == buyProductId && item.getQuantity() >= requiredQuantity) {
-                                productMatched = true;
-                                break;
-                            }
-                        }
-
-                        if (!productMatched) {
-                            allProductsMatched = false;
-                            break;
-                        }
-                    }
+        Timer.Sample sample = couponMetrics.start();
+        CachedCoupon cached = couponCache.get(id).orElseThrow(() -> new IllegalArgumentException("Coupon not found"));
+        logger.debug("Applying coupon with id: {} to cart", id);
 
-                    // Apply the coupon if all buy products are matched
-                    if (allProductsMatched) {
-                        for (Map<String, Object> getProduct : getProducts) {
-                            long getProductId = ((Number) getProduct.get("product_id")).longValue();
-                            double discount = ((Number) getProduct.get("discount")).doubleValue();
-
-                            for (CartItem item : cart.getItems()) {
-                                if (item.getProduct().getProductId() == getProductId) {
-                                    double itemDiscount = item.getQuantity() * (discount / 100) * item.getProduct().getPrice();
-                                    item.setTotalDiscount(itemDiscount);
-                                    cart.setTotalPrice(cart.getTotalPrice() - itemDiscount);
-                                    logger.info("Applied BxGy discount for get product ID: {}", getProductId);
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-                break;
+        // Coupons with incomplete details leave the cart unchanged
+        CouponRule rule = cached.getRule();
+        if (rule == null) {
+            logger.warn("Coupon with id: {} has incomplete details, nothing applied", id);
+            return cart;
+        }
+
+        // Only CART_WISE coupons can be applied to a cart without items
+        if (rule.requiresItems() && (cart.getItems() == null || cart.getItems().isEmpty())) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+
+        // The discounts are computed once for identical carts and written onto each of them
+        CartFingerprint fingerprint = CartFingerprint.of(cart);
+        CartDiscounts discounts = evaluationCache.getApplied(fingerprint, rule, () -> {
+            CartLedger ledger = CartLedger.of(CartView.of(cart));
+            rule.apply(ledger);
+            return CartDiscounts.of(ledger, fingerprint);
+        });
+        discounts.writeTo(cart, fingerprint);
+        couponMetrics.recordApply(sample, rule.getType());
+
+        logger.debug("Applied {} coupon with id: {} to the cart", rule.getType(), id);
+        return cart;
+    }
+
+    // Apply a coupon to a cart and count it as redeemed by the user.
+    // Limits are checked against in-memory counters, so concurrent redemptions of the same coupon
+    // never wait on a row lock; the counts reach the database on the next redemption flush.
+    public Cart redeemCoupon(Long id, String userId, Cart cart) {
+        if (cart == null) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+
+        Timer.Sample sample = couponMetrics.start();
+        CachedCoupon cached = couponCache.get(id)
+                .orElseThrow(() -> new CouponNotFoundException("Coupon not found with id " + id));
+        Coupon coupon = cached.getCoupon();
+        if (coupon.getExpirationDate() != null && coupon.getExpirationDate().isBefore(LocalDateTime.now())) {
+            throw new InvalidCouponException("Coupon " + id + " has expired");
+        }
+        if (coupon.getMaxRedemptionsPerUser() != null && userId == null) {
+            throw new InvalidCouponException("A user id is required to redeem coupon " + id);
+        }
+        CouponRule rule = cached.getRule();
+        if (rule == null) {
+            throw new InvalidCouponException("Coupon " + id + " has incomplete details");
+        }
+        if (rule.requiresItems() && (cart.getItems() == null || cart.getItems().isEmpty())) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+        CartView view = CartView.of(cart);
+        if (!rule.matches(view)) {
+            throw new InvalidCouponException("Coupon " + id + " does not apply to the cart");
+        }
+
+        if (!couponRedemptions.reserve(coupon, userId)) {
+            logger.debug("Redemption limit reached for coupon with id: {}", id);
+            throw new RedemptionLimitException("Redemption limit reached for coupon " + id);
         }
+        try {
+            CartLedger ledger = CartLedger.of(view);
+            rule.apply(ledger);
+            ledger.writeToCart();
+        } catch (RuntimeException e) {
+            couponRedemptions.release(coupon, userId);
+            throw e;
+        }
+        couponMetrics.recordApply(sample, rule.getType());
 
-        logger.info("Coupon applied successfully to the cart");
+        logger.debug("Redeemed coupon with id: {} for user: {}", id, userId);
         return cart;
     }
-}
\ No newline at end of file
+
+    // Apply several coupons to a cart in one pass, in the given order.
+    // Each coupon discounts what the previous ones left, so item discounts accumulate,
+    // and the coupons must be combinable under their stacking rules.
+    public Cart applyCoupons(List<Long> ids, Cart cart) {
+        if (cart == null) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("At least one coupon id is required");
+        }
+
+        Timer.Sample sample = couponMetrics.start();
+        Map<Long, CachedCoupon> coupons = couponCache.getAll(ids);
+        List<CouponRule> rules = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            CachedCoupon cached = coupons.get(id);
+            if (cached == null) {
+                throw new IllegalArgumentException("Coupon not found");
+            }
+            CouponRule rule = cached.getRule();
+            if (rule == null) {
+                logger.warn("Coupon with id: {} has incomplete details, skipped", id);
+                continue;
+            }
+            if (rule.requiresItems() && (cart.getItems() == null || cart.getItems().isEmpty())) {
+                logger.error("Cart is empty or not initialized");
+                throw new IllegalArgumentException("Cart is empty or not initialized");
+            }
+            rules.add(rule);
+        }
+        CouponStacker.checkCombinable(rules);
+
+        CouponStacker.apply(CartView.of(cart), rules).getLedger().writeToCart();
+        couponMetrics.recordStack(sample, cart.getItems() != null ? cart.getItems().size() : 0, null);
+
+        logger.debug("Applied {} coupons to the cart", rules.size());
+        return cart;
+    }
+
+    // Find the combination of applicable coupons giving the largest discount on the cart.
+    // The cart is left unchanged, the returned coupons can be applied in order with applyCoupons.
+    public CouponStack getBestStack(Cart cart) {
+        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+            logger.error("Cart is empty or not initialized");
+            throw new IllegalArgumentException("Cart is empty or not initialized");
+        }
+
+        Timer.Sample sample = couponMetrics.start();
+        EvaluationStats stats = new EvaluationStats();
+        CartView view = CartView.of(cart);
+        StackResult result = CouponStacker.findBest(view, couponCatalog.getIndex().findApplicable(view, stats));
+
+        List<CouponDiscount> discounts = new ArrayList<>(result.getRules().size());
+        for (int i = 0; i < result.getRules().size(); i++) {
+            CouponRule rule = result.getRules().get(i);
+            discounts.add(new CouponDiscount(rule.getCoupon().getId(), rule.getType(), Money.toAmount(result.getDiscount(i))));
+        }
+        couponMetrics.recordStack(sample, cart.getItems().size(), stats);
+
+        logger.debug("Best stack for the cart has {} coupons", discounts.size());
+        return new CouponStack(discounts, Money.toAmount(result.getTotalDiscount()),
+                Money.toAmount(result.getLedger().getRemainingTotal()));
+    }
+}
@@ -0,0 +1,397 @@
+package com.coupons_management.Service;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Compact binary form of coupon details.
+// Byte 0 is the format version, byte 1 the layout. The layout follows the keys of the details,
+// one per coupon type, with product ids and quantities as unsigned varints and amounts (thresholds
+// and discounts) as fixed-width doubles:
+//   CART_WISE     flags, threshold, discount
+//   PRODUCT_WISE  flags, product_id, discount
+//   BxGy          buy count, (product_id, quantity)*, get count, integral bitmap, (product_id, discount)*
+//   BxGy options  flags, [repetition_limit], buy count, (product_id, quantity)*, get count, integral bitmap,
+//                 quantity bitmap, (product_id, discount, [quantity])*
+// A flag bit marks an amount that was an integer in the JSON, so decoding gives back the same
+// Integer/Long/Double values as parsing the JSON would. Details that fit no layout exactly
+// (other keys, other value types) are kept as their JSON text, so encoding is always lossless.
+// Versions already written must stay readable: change a layout by adding a version, never in place.
+public final class DetailsCodec {
+
+    static final byte FORMAT_VERSION = 1;
+
+    static final byte JSON = 0;
+    static final byte CART_WISE = 1;
+    static final byte PRODUCT_WISE = 2;
+    static final byte BXGY = 3;
+    static final byte BXGY_OPTIONS = 4; // BxGy with a repetition limit or get quantities
+
+    private static final int HAS_REPETITION_LIMIT = 1;
+
+    private static final Set<String> CART_WISE_KEYS = Set.of("threshold", "discount");
+    private static final Set<String> PRODUCT_WISE_KEYS = Set.of("product_id", "discount");
+    private static final Set<String> BXGY_KEYS = Set.of("buy_products", "get_products");
+    private static final Set<String> BXGY_LIMITED_KEYS = Set.of("buy_products", "get_products", "repetition_limit");
+    private static final Set<String> BUY_KEYS = Set.of("product_id", "quantity");
+    private static final Set<String> GET_KEYS = Set.of("product_id", "discount");
+    private static final Set<String> GET_QUANTITY_KEYS = Set.of("product_id", "discount", "quantity");
+
+    private static final JsonConverter jsonConverter = new JsonConverter();
+
+    private DetailsCodec() {
+    }
+
+    public static byte[] encode(Map<String, Object> details) {
+        if (details instanceof LazyDetails lazy) {
+            return lazy.bytes; // unchanged since it was read, nothing to encode
+        }
+        byte[] compact = encodeCompact(details);
+        if (compact != null) {
+            return compact;
+        }
+        byte[] json = jsonConverter.convertToDatabaseColumn(details).getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[json.length + 2];
+        bytes[0] = FORMAT_VERSION;
+        bytes[1] = JSON;
+        System.arraycopy(json, 0, bytes, 2, json.length);
+        return bytes;
+    }
+
+    // Details decoded on first access. Loading a coupon only keeps the bytes; coupons whose
+    // details are never read (summaries, redemption counts) never pay for decoding them.
+    public static Map<String, Object> lazy(byte[] bytes) {
+        checkHeader(bytes);
+        return new LazyDetails(bytes);
+    }
+
+    // Unmodifiable details, like the ones JsonConverter returns
+    public static Map<String, Object> decode(byte[] bytes) {
+        checkHeader(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+        try {
+            return switch (bytes[1]) {
+                case CART_WISE -> decodeCartWise(buffer);
+                case PRODUCT_WISE -> decodeProductWise(buffer);
+                case BXGY -> decodeBxGy(buffer, false);
+                case BXGY_OPTIONS -> decodeBxGy(buffer, true);
+                default -> jsonConverter.convertToEntityAttribute(new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_8));
+            };
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated coupon details", e);
+        }
+    }
+
+    private static void checkHeader(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != FORMAT_VERSION || bytes[1] < JSON || bytes[1] > BXGY_OPTIONS) {
+            throw new IllegalArgumentException("Unsupported coupon details format");
+        }
+    }
+
+    // Encoding
+
+    private static byte[] encodeCompact(Map<String, Object> details) {
+        Set<String> keys = details.keySet();
+        Writer out = new Writer();
+        if (keys.equals(CART_WISE_KEYS)) {
+            Object threshold = details.get("threshold");
+            Object discount = details.get("discount");
+            if (!isAmount(threshold) || !isAmount(discount)) {
+                return null;
+            }
+            out.header(CART_WISE);
+            out.put(integralFlag(threshold, 0) | integralFlag(discount, 1));
+            out.putDouble(((Number) threshold).doubleValue());
+            out.putDouble(((Number) discount).doubleValue());
+            return out.toBytes();
+        }
+        if (keys.equals(PRODUCT_WISE_KEYS)) {
+            Object productId = details.get("product_id");
+            Object discount = details.get("discount");
+            if (!isId(productId) || !isAmount(discount)) {
+                return null;
+            }
+            out.header(PRODUCT_WISE);
+            out.put(integralFlag(discount, 0));
+            out.putVarint(((Number) productId).longValue());
+            out.putDouble(((Number) discount).doubleValue());
+            return out.toBytes();
+        }
+        if (keys.equals(BXGY_KEYS) || keys.equals(BXGY_LIMITED_KEYS)) {
+            return encodeBxGy(details, out);
+        }
+        return null;
+    }
+
+    private static byte[] encodeBxGy(Map<String, Object> details, Writer out) {
+        List<Map<?, ?>> buyProducts = entries(details.get("buy_products"), BUY_KEYS, BUY_KEYS);
+        List<Map<?, ?>> getProducts = entries(details.get("get_products"), GET_KEYS, GET_QUANTITY_KEYS);
+        Object repetitionLimit = details.get("repetition_limit");
+        boolean limited = details.containsKey("repetition_limit");
+        if (buyProducts == null || getProducts == null || (limited && !isId(repetitionLimit))) {
+            return null;
+        }
+        byte[] integral = new byte[(getProducts.size() + 7) / 8];
+        byte[] quantities = new byte[integral.length];
+        boolean anyQuantity = false;
+        for (int i = 0; i < getProducts.size(); i++) {
+            Map<?, ?> get = getProducts.get(i);
+            if (!isId(get.get("product_id")) || !isAmount(get.get("discount"))) {
+                return null;
+            }
+            if (get.containsKey("quantity")) {
+                if (!isId(get.get("quantity"))) {
+                    return null;
+                }
+                quantities[i / 8] |= (byte) (1 << (i % 8));
+                anyQuantity = true;
+            }
+            integral[i / 8] |= (byte) integralFlag(get.get("discount"), i % 8);
+        }
+
+        // Details without the options keep the BxGy layout, so they encode as before
+        boolean options = limited || anyQuantity;
+        out.header(options ? BXGY_OPTIONS : BXGY);
+        if (options) {
+            out.put(limited ? HAS_REPETITION_LIMIT : 0);
+            if (limited) {
+                out.putVarint(((Number) repetitionLimit).longValue());
+            }
+        }
+        out.putVarint(buyProducts.size());
+        for (Map<?, ?> buy : buyProducts) {
+            if (!isId(buy.get("product_id")) || !isId(buy.get("quantity"))) {
+                return null;
+            }
+            out.putVarint(((Number) buy.get("product_id")).longValue());
+            out.putVarint(((Number) buy.get("quantity")).longValue());
+        }
+        out.putVarint(getProducts.size());
+        out.put(integral);
+        if (options) {
+            out.put(quantities);
+        }
+        for (Map<?, ?> get : getProducts) {
+            out.putVarint(((Number) get.get("product_id")).longValue());
+            out.putDouble(((Number) get.get("discount")).doubleValue());
+            if (get.containsKey("quantity")) {
+                out.putVarint(((Number) get.get("quantity")).longValue());
+            }
+        }
+        return out.toBytes();
+    }
+
+    // A list of maps with exactly one of the given key sets, or null
+    private static List<Map<?, ?>> entries(Object value, Set<String> keys, Set<String> optionalKeys) {
+        if (!(value instanceof List<?> list)) {
+            return null;
+        }
+        List<Map<?, ?>> entries = new ArrayList<>(list.size());
+        for (Object element : list) {
+            if (!(element instanceof Map<?, ?> map) || (!map.keySet().equals(keys) && !map.keySet().equals(optionalKeys))) {
+                return null;
+            }
+            entries.add(map);
+        }
+        return entries;
+    }
+
+    // Product ids and quantities: non-negative integers
+    private static boolean isId(Object value) {
+        return (value instanceof Integer || value instanceof Long) && ((Number) value).longValue() >= 0;
+    }
+
+    // Amounts: doubles, or integers a double holds exactly
+    private static boolean isAmount(Object value) {
+        if (value instanceof Double) {
+            return true;
+        }
+        if (value instanceof Integer || value instanceof Long) {
+            long amount = ((Number) value).longValue();
+            return (long) (double) amount == amount;
+        }
+        return false;
+    }
+
+    private static int integralFlag(Object amount, int bit) {
+        return amount instanceof Double ? 0 : 1 << bit;
+    }
+
+    // Decoding
+
+    private static Map<String, Object> decodeCartWise(ByteBuffer buffer) {
+        int flags = buffer.get();
+        Map<String, Object> details = new LinkedHashMap<>(4);
+        details.put("threshold", amount(buffer.getDouble(), flags, 0));
+        details.put("discount", amount(buffer.getDouble(), flags, 1));
+        return Collections.unmodifiableMap(details);
+    }
+
+    private static Map<String, Object> decodeProductWise(ByteBuffer buffer) {
+        int flags = buffer.get();
+        Map<String, Object> details = new LinkedHashMap<>(4);
+        details.put("product_id", integer(getVarint(buffer)));
+        details.put("discount", amount(buffer.getDouble(), flags, 0));
+        return Collections.unmodifiableMap(details);
+    }
+
+    private static Map<String, Object> decodeBxGy(ByteBuffer buffer, boolean options) {
+        int flags = options ? buffer.get() : 0;
+        Object repetitionLimit = (flags & HAS_REPETITION_LIMIT) != 0 ? integer(getVarint(buffer)) : null;
+        int buyCount = count(buffer);
+        List<Object> buyProducts = new ArrayList<>(buyCount);
+        for (int i = 0; i < buyCount; i++) {
+            Map<String, Object> buy = new LinkedHashMap<>(4);
+            buy.put("product_id", integer(getVarint(buffer)));
+            buy.put("quantity", integer(getVarint(buffer)));
+            buyProducts.add(Collections.unmodifiableMap(buy));
+        }
+        int getCount = count(buffer);
+        byte[] integral = new byte[(getCount + 7) / 8];
+        buffer.get(integral);
+        byte[] quantities = new byte[options ? integral.length : 0];
+        buffer.get(quantities);
+        List<Object> getProducts = new ArrayList<>(getCount);
+        for (int i = 0; i < getCount; i++) {
+            Map<String, Object> get = new LinkedHashMap<>(4);
+            get.put("product_id", integer(getVarint(buffer)));
+            get.put("discount", amount(buffer.getDouble(), integral[i / 8], i % 8));
+            if (options && (quantities[i / 8] & (1 << (i % 8))) != 0) {
+                get.put("quantity", integer(getVarint(buffer)));
+            }
+            getProducts.add(Collections.unmodifiableMap(get));
+        }
+        Map<String, Object> details = new LinkedHashMap<>(4);
+        details.put("buy_products", Collections.unmodifiableList(buyProducts));
+        details.put("get_products", Collections.unmodifiableList(getProducts));
+        if (repetitionLimit != null) {
+            details.put("repetition_limit", repetitionLimit);
+        }
+        return Collections.unmodifiableMap(details);
+    }
+
+    private static int count(ByteBuffer buffer) {
+        long count = getVarint(buffer);
+        if (count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid coupon details entry count " + count);
+        }
+        return (int) count;
+    }
+
+    private static Object amount(double value, int flags, int bit) {
+        return (flags & (1 << bit)) != 0 ? integer((long) value) : (Object) value;
+    }
+
+    // Integer when it fits, Long otherwise, as Jackson parses JSON numbers
+    private static Object integer(long value) {
+        return value == (int) value ? (Object) (int) value : (Object) value;
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid varint in coupon details");
+    }
+
+    // Growable output buffer; details are small, so it starts at 32 bytes
+    private static final class Writer {
+
+        private byte[] bytes = new byte[32];
+        private int size;
+
+        void header(byte layout) {
+            put(FORMAT_VERSION);
+            put(layout);
+        }
+
+        void put(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void put(byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        void putDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                put((int) (bits >>> shift));
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    // Read-only details backed by their encoded bytes, decoded once when first read
+    private static final class LazyDetails extends AbstractMap<String, Object> {
+
+        private final byte[] bytes;
+        private volatile Map<String, Object> decoded;
+
+        private LazyDetails(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Map<String, Object> decoded() {
+            Map<String, Object> current = decoded;
+            if (current == null) {
+                current = decode(bytes);
+                decoded = current;
+            }
+            return current;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return decoded().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return decoded().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return decoded().size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return decoded().entrySet();
+        }
+    }
+}
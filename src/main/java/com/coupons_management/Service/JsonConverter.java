@@ -1,19 +1,31 @@
 package com.coupons_management.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
+import org.hibernate.annotations.Immutable;
 
 import java.io.IOException;
+import java.util.*;
 
+// Converts coupon details to and from JSON.
+// The converter keeps no state: an entity parses its JSON once and holds the result (see Coupon),
+// and the typed form used for matching is the CouponRule compiled from it, kept per coupon id and
+// version by CouponCache and CouponIndex. Parsed details are unmodifiable, details are always
+// replaced as a whole, never changed in place.
+@Immutable
 @Converter
-public class JsonConverter implements AttributeConverter<Object, String> {
+public class JsonConverter implements AttributeConverter<Map<String, Object>, String> {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectReader detailsReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {
+    });
 
     @Override
-    public String convertToDatabaseColumn(Object attribute) {
+    public String convertToDatabaseColumn(Map<String, Object> attribute) {
         try {
             return objectMapper.writeValueAsString(attribute);
         } catch (JsonProcessingException e) {
@@ -22,11 +34,33 @@ public class JsonConverter implements AttributeConverter<Object, String> {
     }
 
     @Override
-    public Object convertToEntityAttribute(String dbData) {
+    public Map<String, Object> convertToEntityAttribute(String dbData) {
+        if (dbData == null) {
+            return null;
+        }
         try {
-            return objectMapper.readValue(dbData, Object.class);
+            return unmodifiable(detailsReader.<Map<String, Object>>readValue(dbData));
         } catch (IOException e) {
             throw new IllegalArgumentException("Error converting JSON to attribute", e);
         }
     }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unmodifiable(T value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put((String) entry.getKey(), unmodifiable(entry.getValue()));
+            }
+            return (T) Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(unmodifiable(element));
+            }
+            return (T) Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
 }
@@ -0,0 +1,108 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.coupons_management.DTO.BulkImportResult;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Exception.InvalidCouponException;
+import com.coupons_management.Repository.CouponRepository;
+import com.coupons_management.Service.CouponBulkService;
+import com.coupons_management.Service.CouponCatalog;
+import com.coupons_management.Service.CouponIdSequence;
+import com.coupons_management.Service.CouponMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+@DataJpaTest
+@Import({CouponBulkService.class, CouponCatalog.class, CouponMetrics.class, SimpleMeterRegistry.class, CouponIdSequence.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+public class CouponBulkServiceTest {
+
+    // More than one import batch
+    private static final int ROWS = 1_200;
+
+    @Autowired
+    private CouponBulkService couponBulkService;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponIdSequence couponIdSequence;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    public void testImportNdjsonSkipsInvalidRows() throws Exception {
+        String ndjson = """
+                {"type":"CART_WISE","details":{"threshold":100,"discount":10}}
+                {"type":"PRODUCT_WISE","details":{"discount":10}}
+                {"type":"UNKNOWN","details":{}}
+                {"type":"PRODUCT_WISE","details":{"product_id":1,"discount":20},"expirationDate":"2099-01-01T00:00:00"}
+                """;
+
+        BulkImportResult result = couponBulkService.importCoupons(input(ndjson));
+
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertTrue(result.getErrors().get(0).startsWith("Row 2:"));
+        assertEquals(2, couponRepository.count());
+    }
+
+    @Test
+    public void testImportArrayAndExport() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < ROWS; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"type\":\"PRODUCT_WISE\",\"details\":{\"product_id\":").append(i).append(",\"discount\":5}}");
+        }
+        json.append("]");
+
+        BulkImportResult result = couponBulkService.importCoupons(input(json.toString()));
+        assertEquals(ROWS, result.getImported());
+
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        couponBulkService.exportCoupons(ndjson, true);
+        assertEquals(ROWS, ndjson.toString(StandardCharsets.UTF_8).lines().count());
+
+        ByteArrayOutputStream array = new ByteArrayOutputStream();
+        couponBulkService.exportCoupons(array, false);
+        String exported = array.toString(StandardCharsets.UTF_8);
+        assertTrue(exported.startsWith("[{") && exported.endsWith("}]"));
+    }
+
+    @Test
+    public void testImportMalformedJson() {
+        assertThrows(InvalidCouponException.class,
+                () -> couponBulkService.importCoupons(input("[{\"type\":\"CART_WISE\",")));
+    }
+
+    @Test
+    public void testIdSequenceMovesPastExistingIds() {
+        // A row written while ids were IDENTITY values, far above anything the sequence handed out
+        entityManager.getEntityManager().createNativeQuery(
+                        "INSERT INTO coupons (id, type, exclusive, redemption_count, version) VALUES (5000000, 'CART_WISE', false, 0, 0)")
+                .executeUpdate();
+
+        assertTrue(couponIdSequence.align());
+        assertFalse(couponIdSequence.align());
+        long next = ((Number) entityManager.getEntityManager()
+                .createNativeQuery("SELECT NEXT VALUE FOR " + Coupon.ID_SEQUENCE).getSingleResult()).longValue();
+        assertTrue(next - Coupon.ID_ALLOCATION_SIZE >= 5_000_000, "next block starts at " + (next - Coupon.ID_ALLOCATION_SIZE + 1));
+    }
+
+    private static ByteArrayInputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,101 @@
+package com.coupons_management;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class CouponControllerTest {
+
+    private static final String COUPON = """
+            {"type":"CART_WISE","details":{"threshold":100,"discount":10}}""";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testPreSerializedResponsesHonourETags() throws Exception {
+        String created = mockMvc.perform(post("/coupons").contentType(MediaType.APPLICATION_JSON).content(COUPON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String id = created.replaceAll(".*\"id\":(\\d+).*", "$1");
+
+        MvcResult list = mockMvc.perform(get("/coupons"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+        String listEtag = list.getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(list.getResponse().getContentAsString().contains("\"id\":" + id));
+        mockMvc.perform(get("/coupons").header(HttpHeaders.IF_NONE_MATCH, listEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        String couponEtag = mockMvc.perform(get("/coupons/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.details.threshold").value(100))
+                .andExpect(jsonPath("$.redemptionCount").doesNotExist())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/coupons/" + id).header(HttpHeaders.IF_NONE_MATCH, couponEtag))
+                .andExpect(status().isNotModified());
+
+        // An update regenerates both bodies, the old ETags no longer match
+        mockMvc.perform(put("/coupons/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .content(COUPON.replace("100", "200")))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/coupons").header(HttpHeaders.IF_NONE_MATCH, listEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(listEtag)));
+        mockMvc.perform(get("/coupons/" + id).header(HttpHeaders.IF_NONE_MATCH, couponEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.details.threshold").value(200));
+    }
+
+    @Test
+    public void testApplicableCouponsAreStreamedAsNdjson() throws Exception {
+        String created = mockMvc.perform(post("/coupons").contentType(MediaType.APPLICATION_JSON)
+                        .content(COUPON.replace("100", "50")))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String id = created.replaceAll(".*\"id\":(\\d+).*", "$1");
+        String cart = """
+                {"items":[{"product":{"productId":1,"price":40},"quantity":2}],"totalPrice":80}""";
+
+        MvcResult full = mockMvc.perform(post("/coupons/applicable-coupons/stream")
+                        .contentType(MediaType.APPLICATION_JSON).content(cart))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String fullLines = mockMvc.perform(asyncDispatch(full))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(fullLines.lines().anyMatch(line -> line.contains("\"id\":" + id) && line.contains("\"details\"")));
+
+        MvcResult compact = mockMvc.perform(post("/coupons/applicable-coupons/stream?compact=true")
+                        .contentType(MediaType.APPLICATION_JSON).content(cart))
+                .andReturn();
+        String compactLines = mockMvc.perform(asyncDispatch(compact))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        // 10% of the 80 cart
+        assertTrue(compactLines.lines().anyMatch(line -> line.equals(
+                "{\"couponId\":" + id + ",\"type\":\"CART_WISE\",\"discount\":8.0}")));
+
+        // A bad cart fails like on /applicable-coupons, before anything is streamed
+        MvcResult empty = mockMvc.perform(post("/coupons/applicable-coupons/stream")
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"items\":[]}"))
+                .andReturn();
+        assertThrows(ServletException.class, () -> mockMvc.perform(asyncDispatch(empty)));
+    }
+}
@@ -0,0 +1,69 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Service.CatalogSnapshot;
+import com.coupons_management.benchmark.CouponReplay;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public class CouponReplayTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testReplaysRecordedCartsAgainstAnExportDump() throws Exception {
+        Path catalog = Files.writeString(tempDir.resolve("coupons.json"), """
+                [{"id":1,"type":"CART_WISE","details":{"threshold":100,"discount":10}},
+                 {"id":2,"type":"PRODUCT_WISE","details":{"product_id":1,"discount":20}},
+                 {"id":3,"type":"BxGy","details":{"buy_products":[{"product_id":1,"quantity":2}],"get_products":[{"product_id":2,"discount":100}]}}]""");
+        Path carts = Files.writeString(tempDir.resolve("carts.ndjson"), """
+                {"items":[{"product":{"productId":1,"price":50.0},"quantity":2},{"product":{"productId":2,"price":20.0},"quantity":1}],"totalPrice":120.0}
+                {"items":[{"product":{"productId":9,"price":5.0},"quantity":1}],"totalPrice":5.0}
+                {"totalPrice":0.0}
+                """);
+
+        List<Coupon> coupons = CouponReplay.readCatalog(catalog, objectMapper);
+        List<Cart> recorded = CouponReplay.readCarts(carts, objectMapper);
+        CouponReplay.Result result = new CouponReplay(coupons, 2).run(recorded);
+
+        assertEquals(3, result.getApplicable().getCount());
+        assertEquals(1, result.getApplicable().getErrors()); // the cart without items is rejected
+        assertEquals(1, result.getCartsMatched());
+        assertEquals(3, result.getMatchCount());
+        assertEquals(3, result.getApply().getCount());
+        assertEquals(0, result.getApply().getErrors());
+        assertEquals(1, result.getMatched(CouponType.BxGy));
+        assertTrue(result.getApplicable().getPercentile(99) > 0);
+        // Replaying never changes the recorded carts
+        assertEquals(120.0, recorded.get(0).getTotalPrice());
+        assertEquals(0.0, recorded.get(0).getItems().get(1).getTotalDiscount());
+    }
+
+    @Test
+    public void testReadsTheCatalogFromASnapshot() throws Exception {
+        Coupon coupon = new Coupon();
+        coupon.setId(7L);
+        coupon.setType(CouponType.PRODUCT_WISE);
+        coupon.setDetails(Map.of("product_id", 1, "discount", 20));
+        Path snapshot = tempDir.resolve("catalog.snapshot");
+        CatalogSnapshot.write(snapshot, 1, LocalDateTime.now(), List.of(coupon));
+
+        List<Coupon> coupons = CouponReplay.readCatalog(snapshot, objectMapper);
+        assertEquals(7L, coupons.get(0).getId());
+        assertEquals(20, coupons.get(0).getDetails().get("discount"));
+    }
+}
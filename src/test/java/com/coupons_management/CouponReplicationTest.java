@@ -0,0 +1,245 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.coupons_management.Engine.CartWiseRule;
+import com.coupons_management.Engine.CouponIndex;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Entity.CouponChange;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Event.CouponsImportedEvent;
+import com.coupons_management.Repository.CouponChangeRepository;
+import com.coupons_management.Repository.CouponRedemptionRepository;
+import com.coupons_management.Repository.CouponRepository;
+import com.coupons_management.Service.CartEvaluationCache;
+import com.coupons_management.Service.CatalogSnapshot;
+import com.coupons_management.Service.CouponCache;
+import com.coupons_management.Service.CouponCatalog;
+import com.coupons_management.Service.CouponMetrics;
+import com.coupons_management.Service.CouponRedemptions;
+import com.coupons_management.Service.CouponReplication;
+import com.coupons_management.Service.CouponService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Two or three instances of the service in one JVM, sharing the embedded database.
+// The test runs outside a test transaction: each write commits in its own transaction, as it would
+// on a real instance, so the other instances only see it once committed. Rows are removed afterwards.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CouponReplicationTest {
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private CouponChangeRepository changeRepository;
+
+    @Autowired
+    private CouponRedemptionRepository redemptionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path tempDir;
+
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeRepository.deleteAllInBatch();
+        redemptionRepository.deleteAllInBatch();
+        couponRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testWritesReachTheOtherInstanceThroughTheChangeLog() {
+        Node first = new Node("");
+        Node second = new Node("");
+        first.replication.start();
+        second.replication.start();
+        assertTrue(second.catalog.getIndex().isEmpty());
+
+        Coupon coupon = transaction.execute(status -> first.service.createCoupon(coupon(Map.of("threshold", 100, "discount", 10))));
+        assertEquals(1, first.catalog.getIndex().size());
+        assertTrue(second.catalog.getIndex().isEmpty());
+
+        second.replication.sync();
+        assertEquals(coupon.getId(), second.catalog.getIndex().getRules().get(0).getCoupon().getId());
+        assertEquals(second.replication.getVersion(), changeRepository.findLastId());
+
+        transaction.execute(status -> first.service.updateCoupon(coupon.getId(), coupon(Map.of("threshold", 200, "discount", 10))));
+        second.replication.sync();
+        assertEquals(200, ((CartWiseRule) second.catalog.getIndex().getRule(coupon.getId())).getThreshold());
+
+        transaction.executeWithoutResult(status -> first.service.deleteCoupon(coupon.getId()));
+        second.replication.sync();
+        assertTrue(second.catalog.getIndex().isEmpty());
+
+        // A bulk import on one instance makes the other reload everything
+        transaction.executeWithoutResult(status -> {
+            couponRepository.save(coupon(Map.of("threshold", 50, "discount", 5)));
+            first.publish(new CouponsImportedEvent(1));
+        });
+        second.replication.sync();
+        assertEquals(1, second.catalog.getIndex().size());
+
+        // An instance does not replay its own entries, its catalog is not reloaded again
+        first.catalog.getIndex();
+        long loads = first.indexLoads();
+        first.replication.sync();
+        first.catalog.getIndex();
+        assertEquals(loads, first.indexLoads());
+    }
+
+    @Test
+    public void testChangeCommittedAfterALaterOneIsStillApplied() throws Exception {
+        Node first = new Node("");
+        Node second = new Node("");
+        first.replication.start();
+        second.replication.start();
+        assertTrue(second.catalog.getIndex().isEmpty());
+
+        // The slow write takes its change id first and commits last
+        CountDownLatch logged = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Coupon> slow = CompletableFuture.supplyAsync(() -> transaction.execute(status -> {
+            Coupon coupon = first.service.createCoupon(coupon(Map.of("threshold", 100, "discount", 10)));
+            logged.countDown();
+            try {
+                assertTrue(commit.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return coupon;
+        }));
+        assertTrue(logged.await(10, TimeUnit.SECONDS));
+        Coupon fast = transaction.execute(status -> first.service.createCoupon(coupon(Map.of("threshold", 200, "discount", 10))));
+
+        second.replication.sync();
+        assertEquals(1, second.catalog.getIndex().size());
+        assertNotNull(second.catalog.getIndex().getRule(fast.getId()));
+
+        commit.countDown();
+        Coupon late = slow.get(10, TimeUnit.SECONDS);
+        assertTrue(changeId(late) < changeId(fast));
+        assertTrue(second.replication.getVersion() > changeId(late));
+
+        // Its entry is below the version but inside the grace window, so it is read again
+        second.replication.sync();
+        assertEquals(2, second.catalog.getIndex().size());
+        assertNotNull(second.catalog.getIndex().getRule(late.getId()));
+    }
+
+    @Test
+    public void testInstanceStartsFromSnapshotAndReplaysOnlyLaterChanges() throws Exception {
+        String snapshotPath = tempDir.resolve("catalog.snapshot").toString();
+        Node first = new Node(snapshotPath);
+        first.replication.start();
+        Coupon expiring = coupon(Map.of("threshold", 100, "discount", 10));
+        expiring.setExpirationDate(LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.MILLIS));
+        expiring.setStackingGroup("seasonal");
+        expiring.setMaxRedemptions(500);
+        Coupon saved = transaction.execute(status -> first.service.createCoupon(expiring));
+        first.replication.sync();
+        first.replication.writeSnapshot();
+
+        CatalogSnapshot snapshot = CatalogSnapshot.read(Path.of(snapshotPath));
+        assertEquals(first.replication.getVersion(), snapshot.getVersion());
+        Coupon restored = snapshot.getCoupons().get(0);
+        assertEquals(saved.getId(), restored.getId());
+        assertEquals(saved.getExpirationDate(), restored.getExpirationDate());
+        assertEquals("seasonal", restored.getStackingGroup());
+        assertEquals(500, restored.getMaxRedemptions());
+        assertNull(restored.getMaxRedemptionsPerUser());
+        assertEquals(saved.getDetails(), restored.getDetails());
+
+        Coupon later = transaction.execute(status -> first.service.createCoupon(coupon(Map.of("threshold", 300, "discount", 15))));
+
+        Node restarted = new Node(snapshotPath);
+        restarted.replication.start();
+        CouponIndex index = restarted.catalog.getIndex();
+        assertEquals(2, index.size());
+        assertNotNull(index.getRule(later.getId()));
+        assertEquals(0, restarted.indexLoads()); // nothing loaded from the coupons table
+    }
+
+    // One service instance: its own catalog, caches and replication, with a publisher standing in for its context
+    private final class Node {
+
+        private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        private final CouponCatalog catalog;
+        private final CouponCache cache;
+        private final CouponRedemptions redemptions;
+        private final CouponReplication replication;
+        private final CouponService service;
+
+        Node(String snapshotPath) {
+            CouponMetrics metrics = new CouponMetrics(registry);
+            catalog = new CouponCatalog(couponRepository, metrics);
+            cache = new CouponCache(couponRepository, metrics, 1_000, Duration.ofMinutes(10), Duration.ofSeconds(5));
+            redemptions = new CouponRedemptions(couponRepository, redemptionRepository, transactionManager);
+            replication = new CouponReplication(catalog, couponRepository, changeRepository, this::publish,
+                    transactionManager, snapshotPath, Duration.ofSeconds(10), Duration.ofDays(1));
+            service = new CouponService(couponRepository, catalog, this::publish, metrics, redemptions, cache,
+                    new CartEvaluationCache(metrics, Duration.ofSeconds(2), 1_000));
+        }
+
+        void publish(Object event) {
+            if (event instanceof CouponChangedEvent changed) {
+                replication.onCouponChanged(changed);
+                catalog.onCouponChanged(changed);
+                redemptions.onCouponChanged(changed);
+                cache.onCouponChanged(changed);
+            } else if (event instanceof CouponsImportedEvent imported) {
+                replication.onCouponsImported(imported);
+                catalog.refresh();
+                cache.onCouponsImported();
+            }
+        }
+
+        long indexLoads() {
+            return registry.get("coupons.db.fetch").tag("query", "findActive").timer().count();
+        }
+    }
+
+    private long changeId(Coupon coupon) {
+        return changeRepository.findAll().stream()
+                .filter(change -> coupon.getId().equals(change.getCouponId()))
+                .mapToLong(CouponChange::getId)
+                .max()
+                .orElseThrow();
+    }
+
+    private static Coupon coupon(Map<String, Object> details) {
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.CART_WISE);
+        coupon.setDetails(details);
+        return coupon;
+    }
+}
@@ -0,0 +1,137 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.coupons_management.DTO.CouponSummary;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Repository.CouponRepository;
+import com.coupons_management.Service.CouponDetailsMigration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@DataJpaTest
+public class CouponRepositoryTest {
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        couponRepository.save(coupon(CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10), null));
+        couponRepository.save(coupon(CouponType.CART_WISE, Map.of("threshold", 50, "discount", 5), now.minusDays(1)));
+        couponRepository.save(coupon(CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 20), now.plusDays(1)));
+    }
+
+    @Test
+    public void testFindActive() {
+        List<Coupon> active = couponRepository.findActive(now);
+        assertEquals(2, active.size());
+        assertTrue(active.stream().allMatch(c -> c.getExpirationDate() == null || !c.getExpirationDate().isBefore(now)));
+    }
+
+    @Test
+    public void testFindActiveByType() {
+        List<Coupon> cartWise = couponRepository.findActiveByType(CouponType.CART_WISE, now);
+        assertEquals(1, cartWise.size());
+        assertEquals(100, ((Number) cartWise.get(0).getDetails().get("threshold")).intValue());
+    }
+
+    @Test
+    public void testSummaries() {
+        assertEquals(3, couponRepository.findAllSummaries().size());
+
+        List<CouponSummary> active = couponRepository.findActiveSummaries(null, now);
+        assertEquals(2, active.size());
+
+        List<CouponSummary> productWise = couponRepository.findActiveSummaries(CouponType.PRODUCT_WISE, now);
+        assertEquals(1, productWise.size());
+        assertEquals(CouponType.PRODUCT_WISE, productWise.get(0).getType());
+    }
+
+    @Test
+    public void testDetailsDecodedOnceAndUnmodifiable() {
+        Long id = couponRepository.save(coupon(CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))), null)).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<String, Object> details = couponRepository.findById(id).orElseThrow().getDetails();
+
+        assertSame(details.get("buy_products"), details.get("buy_products")); // decoded once by the map
+        assertEquals(List.of(Map.of("product_id", 1, "quantity", 2)), details.get("buy_products"));
+        assertThrows(UnsupportedOperationException.class, () -> details.put("threshold", 1));
+    }
+
+    @Test
+    public void testAddRedemptionsKeepsVersionAndSurvivesEntityUpdates() {
+        Coupon saved = couponRepository.saveAndFlush(coupon(CouponType.CART_WISE, Map.of("threshold", 10, "discount", 1), null));
+        Long version = saved.getVersion();
+
+        assertEquals(1, couponRepository.addRedemptions(saved.getId(), 42));
+        entityManager.clear();
+        Coupon reloaded = couponRepository.findById(saved.getId()).orElseThrow();
+        assertEquals(42, reloaded.getRedemptionCount());
+        assertEquals(version, reloaded.getVersion());
+
+        // Saving a stale copy of the coupon does not overwrite the flushed count
+        reloaded.setRedemptionCount(0);
+        reloaded.setMaxRedemptions(500);
+        couponRepository.saveAndFlush(reloaded);
+        entityManager.clear();
+        assertEquals(42, couponRepository.findById(saved.getId()).orElseThrow().getRedemptionCount());
+        assertEquals(0, couponRepository.addRedemptions(-1L, 1));
+    }
+
+    @Test
+    public void testLegacyJsonDetailsAreReadAndMigrated() {
+        // Rows written before the binary column only have the JSON text
+        for (long id = 1_000_001; id <= 1_000_003; id++) {
+            entityManager.getEntityManager().createNativeQuery(
+                            "INSERT INTO coupons (id, type, details, exclusive, redemption_count, version) "
+                                    + "VALUES (?, 'PRODUCT_WISE', ?, false, 0, 3)")
+                    .setParameter(1, id)
+                    .setParameter(2, "{\"product_id\":" + id + ",\"discount\":15}")
+                    .executeUpdate();
+        }
+        Coupon legacy = couponRepository.findById(1_000_001L).orElseThrow();
+        assertEquals(Map.of("product_id", 1_000_001, "discount", 15), legacy.getDetails());
+        assertSame(legacy.getDetails(), legacy.getDetails()); // parsed once by the entity
+        entityManager.clear();
+
+        CouponDetailsMigration migration = new CouponDetailsMigration(couponRepository, transactionManager, 2, false);
+        assertEquals(3, migration.migrate());
+        assertEquals(0, migration.migrate());
+        entityManager.clear();
+
+        Coupon migrated = couponRepository.findById(1_000_003L).orElseThrow();
+        assertNull(migrated.getLegacyDetails());
+        assertEquals(Map.of("product_id", 1_000_003, "discount", 15), migrated.getDetails());
+        assertEquals(3, migrated.getVersion());
+    }
+
+    private static Coupon coupon(CouponType type, Map<String, Object> details, LocalDateTime expirationDate) {
+        Coupon coupon = new Coupon();
+        coupon.setType(type);
+        coupon.setDetails(details);
+        coupon.setExpirationDate(expirationDate);
+        return coupon;
+    }
+}
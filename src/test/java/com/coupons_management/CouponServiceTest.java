@@ -1,36 +1,98 @@
 package com.coupons_management;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.coupons_management.DTO.CouponDiscount;
+import com.coupons_management.DTO.CouponRanking;
+import com.coupons_management.DTO.CouponStack;
+import com.coupons_management.DTO.CouponTier;
+import com.coupons_management.Engine.CartFingerprint;
 import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
 import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Entity.Product;
 import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Exception.InvalidCouponException;
+import com.coupons_management.Exception.RedemptionLimitException;
+import com.coupons_management.Entity.CouponRedemption;
+import com.coupons_management.Repository.CouponRedemptionRepository;
 import com.coupons_management.Repository.CouponRepository;
+import com.coupons_management.Service.CartEvaluationCache;
+import com.coupons_management.Service.CouponCache;
+import com.coupons_management.Service.CouponCatalog;
+import com.coupons_management.Service.CouponMetrics;
+import com.coupons_management.Service.CouponRedemptions;
 import com.coupons_management.Service.CouponService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class CouponServiceTest {
 
-    @InjectMocks
     private CouponService couponService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @Mock
     private CouponRepository couponRepository;
 
+    @Mock
+    private CouponRedemptionRepository redemptionRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CouponRedemptions couponRedemptions;
+
+    private CouponCatalog couponCatalog;
+
+    private final MutableClock clock = new MutableClock();
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        CouponMetrics couponMetrics = new CouponMetrics(meterRegistry);
+        couponCatalog = new CouponCatalog(couponRepository, couponMetrics, clock);
+        couponRedemptions = new CouponRedemptions(couponRepository, redemptionRepository, transactionManager);
+        CouponCache couponCache = new CouponCache(couponRepository, couponMetrics, 1_000, Duration.ofMinutes(10), Duration.ofSeconds(5));
+        couponService = new CouponService(couponRepository, couponCatalog, event -> {
+            couponCatalog.onCouponChanged((CouponChangedEvent) event);
+            couponRedemptions.onCouponChanged((CouponChangedEvent) event);
+            couponCache.onCouponChanged((CouponChangedEvent) event);
+        }, couponMetrics, couponRedemptions, couponCache, new CartEvaluationCache(couponMetrics, Duration.ofSeconds(2), 1_000));
     }
 
     @Test
@@ -39,10 +101,11 @@ public class CouponServiceTest {
         cart.setTotalPrice(100.0);
         cart.setItems(Collections.emptyList());
 
-        when(couponRepository.findAll()).thenReturn(Collections.emptyList());
+        when(couponRepository.findActive(any())).thenReturn(Collections.emptyList());
 
         List<Coupon> result = couponService.getApplicableCoupons(cart);
         assertTrue(result.isEmpty());
+        assertEquals(1, meterRegistry.get("coupons.applicable").timer().count());
     }
 
     @Test
@@ -52,12 +115,233 @@ public class CouponServiceTest {
         Coupon expiredCoupon = new Coupon();
         expiredCoupon.setExpirationDate(LocalDateTime.now().minusDays(1));
 
-        when(couponRepository.findAll()).thenReturn(Arrays.asList(expiredCoupon));
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(expiredCoupon));
 
         List<Coupon> result = couponService.getApplicableCoupons(cart);
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void testGetApplicableCoupons_EvictedOnExpiry() {
+        Cart cart = new Cart();
+        cart.setItems(Arrays.asList(cartItem(2L, 20.0, 1)));
+        Coupon expiringCoupon = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        expiringCoupon.setExpirationDate(LocalDateTime.now(clock).plusMinutes(5));
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(expiringCoupon));
+
+        assertEquals(1, couponService.getApplicableCoupons(cart).size());
+        // Still valid at its expiration instant
+        clock.advance(Duration.ofMinutes(5));
+        couponCatalog.evictExpired();
+        assertEquals(1, couponService.getApplicableCoupons(cart).size());
+        // The timer runs the eviction once the date has passed
+        clock.advance(Duration.ofMillis(1));
+        couponCatalog.evictExpired();
+        assertTrue(couponService.getApplicableCoupons(cart).isEmpty());
+        verify(couponRepository, times(1)).findActive(any());
+    }
+
+    @Test
+    public void testGetApplicableCoupons_IndexedMatches() {
+        Cart cart = new Cart();
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+
+        Coupon cartWise = coupon(1L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10));
+        Coupon cartWiseTooHigh = coupon(2L, CouponType.CART_WISE, Map.of("threshold", 500, "discount", 20));
+        Coupon productWise = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        Coupon otherProduct = coupon(4L, CouponType.PRODUCT_WISE, Map.of("product_id", 9, "discount", 15));
+        Coupon bxgy = coupon(5L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+        Coupon bxgyNotMet = coupon(6L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 3)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+
+        when(couponRepository.findActive(any())).thenReturn(
+                Arrays.asList(cartWise, cartWiseTooHigh, productWise, otherProduct, bxgy, bxgyNotMet));
+
+        List<Coupon> result = couponService.getApplicableCoupons(cart);
+        assertEquals(Set.of(1L, 3L, 5L), result.stream().map(Coupon::getId).collect(Collectors.toSet()));
+
+        // Only the rules indexed under products 1 and 2 were evaluated
+        assertEquals(2.0, meterRegistry.get("coupons.evaluation.scanned").tag("type", "BxGy").counter().count());
+        assertEquals(1.0, meterRegistry.get("coupons.evaluation.matched").tag("type", "BxGy").counter().count());
+        assertEquals(1, meterRegistry.get("coupons.applicable").timer().count());
+    }
+
+    @Test
+    public void testIdenticalCartsReuseTheEvaluationUntilTheCatalogChanges() {
+        Coupon productWise = coupon(1L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        Coupon bxgy = coupon(2L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(productWise, bxgy));
+        when(couponRepository.findById(2L)).thenReturn(Optional.of(bxgy));
+        when(couponRepository.saveAndFlush(any())).thenAnswer(invocation -> {
+            Coupon saved = invocation.getArgument(0);
+            saved.setId(3L);
+            return saved;
+        });
+
+        // Same lines in another order: one evaluation, each cart gets its own copy of the result
+        Cart first = cart(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1));
+        Cart reordered = cart(cartItem(2L, 20.0, 1), cartItem(1L, 50.0, 2));
+        List<Coupon> applicable = couponService.getApplicableCoupons(first);
+        assertEquals(Set.of(1L, 2L), applicable.stream().map(Coupon::getId).collect(Collectors.toSet()));
+        assertEquals(applicable, couponService.getApplicableCoupons(reordered));
+        assertNotSame(applicable, couponService.getApplicableCoupons(first));
+        assertEquals(1.0, meterRegistry.get("coupons.evaluation.scanned").tag("type", "BxGy").counter().count());
+        // Every request is timed, only the evaluation counts the cart
+        assertEquals(3, meterRegistry.get("coupons.applicable").timer().count());
+        assertEquals(1, meterRegistry.get("coupons.cart.size").summary().count());
+
+        // Discounts land on the matching line of each cart
+        couponService.applyCoupon(2L, first);
+        couponService.applyCoupon(2L, reordered);
+        assertEquals(20.0, first.getItems().get(1).getTotalDiscount());
+        assertEquals(20.0, reordered.getItems().get(0).getTotalDiscount());
+        assertEquals(0.0, reordered.getItems().get(1).getTotalDiscount());
+        assertEquals(100.0, reordered.getTotalPrice());
+
+        // A new coupon builds a new index, the cached result is not used for it
+        couponService.createCoupon(coupon(null, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10)));
+        assertEquals(Set.of(1L, 2L, 3L), couponService.getApplicableCoupons(cart(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)))
+                .stream().map(Coupon::getId).collect(Collectors.toSet()));
+        assertEquals(2.0, meterRegistry.get("coupons.evaluation.scanned").tag("type", "BxGy").counter().count());
+    }
+
+    @Test
+    public void testConcurrentIdenticalEvaluationsAreCoalesced() throws Exception {
+        CartEvaluationCache cache = new CartEvaluationCache(new CouponMetrics(new SimpleMeterRegistry()), Duration.ofSeconds(2), 100);
+        CartFingerprint fingerprint = CartFingerprint.of(cart(cartItem(1L, 50.0, 2)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger evaluations = new AtomicInteger();
+        Supplier<String> evaluation = () -> {
+            evaluations.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.getApplicable(fingerprint, 1, evaluation)));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.getApplicable(fingerprint, 1, evaluation)));
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("result", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, evaluations.get());
+
+        // Another catalog generation evaluates again, and a failure is not cached
+        assertEquals("result", cache.getApplicable(fingerprint, 2, evaluation));
+        assertEquals(2, evaluations.get());
+        assertThrows(IllegalStateException.class, () -> cache.getApplicable(fingerprint, 3, () -> {
+            throw new IllegalStateException("evaluation failed");
+        }));
+        assertEquals("result", cache.getApplicable(fingerprint, 3, evaluation));
+    }
+
+    @Test
+    public void testGetApplicableCouponIds_Batch() {
+        Cart matching = new Cart();
+        matching.setItems(Arrays.asList(cartItem(2L, 20.0, 1)));
+        Cart other = new Cart();
+        other.setItems(Arrays.asList(cartItem(7L, 20.0, 1)));
+        Cart empty = new Cart();
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(
+                coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15))));
+
+        List<List<Long>> result = couponService.getApplicableCouponIds(Arrays.asList(matching, other, empty));
+        assertEquals(List.of(List.of(3L), List.of(), List.of()), result);
+        verify(couponRepository, times(1)).findActive(any());
+    }
+
+    @Test
+    public void testRankCoupons_BestFirstWithoutMutatingCart() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(120.0);
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(
+                coupon(1L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10)),
+                coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 20))));
+
+        CouponRanking ranking = couponService.rankCoupons(cart);
+        assertEquals(3L, ranking.getBestCoupon().getCouponId());
+        assertEquals(20.0, ranking.getBestCoupon().getDiscount());
+        assertEquals(List.of(3L, 1L), ranking.getCoupons().stream().map(CouponDiscount::getCouponId).toList());
+        assertEquals(120.0, cart.getTotalPrice());
+        assertEquals(0.0, cart.getItems().get(0).getTotalDiscount());
+    }
+
+    @Test
+    public void testUpdateCoupon_IndexUpdatedWithoutReload() {
+        Cart cart = new Cart();
+        cart.setItems(Arrays.asList(cartItem(2L, 20.0, 1)));
+        Coupon stored = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 9, "discount", 15));
+        stored.setVersion(0L);
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(stored));
+        when(couponRepository.findById(3L)).thenReturn(Optional.of(stored));
+        when(couponRepository.saveAndFlush(stored)).thenAnswer(invocation -> {
+            stored.setVersion(stored.getVersion() + 1);
+            return stored;
+        });
+        assertTrue(couponService.getApplicableCoupons(cart).isEmpty());
+
+        Coupon update = coupon(null, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        update.setVersion(0L);
+        couponService.updateCoupon(3L, update);
+
+        assertEquals(1, couponService.getApplicableCoupons(cart).size());
+        verify(couponRepository, times(1)).findActive(any());
+    }
+
+    @Test
+    public void testDeleteCoupon_LateUpdateEventDoesNotRestoreIt() {
+        Cart cart = new Cart();
+        cart.setItems(Arrays.asList(cartItem(2L, 20.0, 1)));
+        Coupon stored = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        stored.setVersion(1L);
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(stored));
+        when(couponRepository.findById(3L)).thenReturn(Optional.of(stored));
+        assertEquals(1, couponService.getApplicableCoupons(cart).size());
+
+        // The update to version 1 committed before the delete, but its listener runs after the delete's
+        couponService.deleteCoupon(3L);
+        couponCatalog.onCouponChanged(new CouponChangedEvent(CouponChangedEvent.ChangeType.UPDATED, 3L, 1L, stored));
+        assertNull(couponCatalog.getIndex().getRule(3L));
+    }
+
+    @Test
+    public void testUpdateCoupon_StaleVersionRejected() {
+        Coupon stored = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 9, "discount", 15));
+        stored.setVersion(2L);
+        when(couponRepository.findById(3L)).thenReturn(Optional.of(stored));
+
+        Coupon update = coupon(null, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 15));
+        update.setVersion(1L);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> couponService.updateCoupon(3L, update));
+        verify(couponRepository, never()).saveAndFlush(any());
+    }
+
     @Test
     public void testApplyCoupon_ValidCoupon() {
         Cart cart = new Cart();
@@ -73,4 +357,385 @@ public class CouponServiceTest {
         assertEquals(90.0, updatedCart.getTotalPrice());
         // Additional assertions based on how discounts are applied
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testApplyCoupon_BxGy() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(120.0);
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+        Coupon bxgy = coupon(5L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+
+        when(couponRepository.findById(5L)).thenReturn(Optional.of(bxgy));
+
+        Cart updatedCart = couponService.applyCoupon(5L, cart);
+        assertEquals(100.0, updatedCart.getTotalPrice());
+        assertEquals(20.0, updatedCart.getItems().get(1).getTotalDiscount());
+        assertEquals(0.0, updatedCart.getItems().get(0).getTotalDiscount());
+    }
+
+    @Test
+    public void testGetApplicableCoupons_LargeCartWithRepeatedProduct() {
+        List<CartItem> items = new ArrayList<>();
+        for (long productId = 1; productId <= 300; productId++) {
+            items.add(cartItem(productId * 1_000_003L, 1.0, 1));
+        }
+        items.add(cartItem(7L, 10.0, 1));
+        items.add(cartItem(7L, 10.0, 3)); // with the first line, the 3 bought units and the free one
+        Cart cart = new Cart();
+        cart.setTotalPrice(340.0);
+        cart.setItems(items);
+        Coupon productWise = coupon(1L, CouponType.PRODUCT_WISE, Map.of("product_id", 150_000_450L, "discount", 50));
+        Coupon bxgy = coupon(2L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 7, "quantity", 3)),
+                "get_products", List.of(Map.of("product_id", 7, "discount", 10))));
+        Coupon cartWise = coupon(3L, CouponType.CART_WISE, Map.of("threshold", 341, "discount", 10));
+
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(productWise, bxgy, cartWise));
+
+        List<Coupon> result = couponService.getApplicableCoupons(cart);
+        assertEquals(Set.of(1L, 2L), result.stream().map(Coupon::getId).collect(Collectors.toSet()));
+
+        // The BxGy discount goes to the first line of the product
+        when(couponRepository.findById(2L)).thenReturn(Optional.of(bxgy));
+        couponService.applyCoupon(2L, cart);
+        assertEquals(1.0, items.get(300).getTotalDiscount());
+        assertEquals(0.0, items.get(301).getTotalDiscount());
+        assertEquals(339.0, cart.getTotalPrice());
+    }
+
+    @Test
+    public void testApplyCoupon_BxGyRepeatsUpToTheRepetitionLimit() {
+        // Buy 2 get 1 of the same product: 6 units are two repetitions, the other units are bought
+        Coupon sameProduct = coupon(1L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 1, "discount", 100))));
+        Coupon limited = coupon(2L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 1, "discount", 100)),
+                "repetition_limit", 1));
+        // Buy 2 of product 1 and 1 of product 3, get 2 units of product 2 at half price each time
+        Coupon bundle = coupon(3L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2), Map.of("product_id", 3, "quantity", 1)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 50, "quantity", 2))));
+        when(couponRepository.findById(1L)).thenReturn(Optional.of(sameProduct));
+        when(couponRepository.findById(2L)).thenReturn(Optional.of(limited));
+        when(couponRepository.findById(3L)).thenReturn(Optional.of(bundle));
+
+        assertEquals(40.0, couponService.applyCoupon(1L, cart(cartItem(1L, 10.0, 6))).getTotalPrice());
+        assertEquals(50.0, couponService.applyCoupon(2L, cart(cartItem(1L, 10.0, 6))).getTotalPrice());
+        assertEquals(40.0, couponService.applyCoupon(1L, cart(cartItem(1L, 10.0, 5))).getTotalPrice());
+
+        // Product 3 allows one repetition: two units of product 2 over its lines, not all five
+        Cart cart = cart(cartItem(1L, 10.0, 6), cartItem(3L, 5.0, 1), cartItem(2L, 30.0, 1), cartItem(2L, 30.0, 4));
+        couponService.applyCoupon(3L, cart);
+        assertEquals(15.0, cart.getItems().get(2).getTotalDiscount());
+        assertEquals(15.0, cart.getItems().get(3).getTotalDiscount());
+        assertEquals(185.0, cart.getTotalPrice());
+
+        // Two units are not enough for one repetition of buy 2 get 1, and product 3 is missing for the bundle
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(sameProduct, limited, bundle));
+        assertTrue(couponService.getApplicableCoupons(cart(cartItem(1L, 10.0, 2))).isEmpty());
+        assertEquals(List.of(1L, 2L), couponService.getApplicableCoupons(cart(cartItem(1L, 10.0, 3), cartItem(2L, 30.0, 2)))
+                .stream().map(Coupon::getId).sorted().toList());
+    }
+
+    @Test
+    public void testApplyCoupon_CartWithoutTotalPrice() {
+        Coupon bxgy = coupon(5L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+        Coupon cartWise = coupon(6L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10));
+
+        when(couponRepository.findById(5L)).thenReturn(Optional.of(bxgy));
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(bxgy, cartWise));
+
+        // The total comes from the lines, a missing totalPrice must not cap the discounts at zero
+        Cart cart = new Cart();
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+        Cart updatedCart = couponService.applyCoupon(5L, cart);
+        assertEquals(20.0, updatedCart.getItems().get(1).getTotalDiscount());
+        assertEquals(100.0, updatedCart.getTotalPrice());
+
+        Cart unpriced = new Cart();
+        unpriced.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+        CouponStack stack = couponService.getBestStack(unpriced);
+        assertEquals(30.0, stack.getTotalDiscount());
+        assertEquals(90.0, stack.getTotalPrice());
+    }
+
+    @Test
+    public void testGetBestStack_CombinesCouponsWithinStackingRules() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(120.0);
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 20.0, 1)));
+        Coupon productWise = coupon(1L, CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 10));
+        Coupon bxgy = coupon(2L, CouponType.BxGy, Map.of(
+                "buy_products", List.of(Map.of("product_id", 1, "quantity", 2)),
+                "get_products", List.of(Map.of("product_id", 2, "discount", 100))));
+        Coupon smallCartWise = coupon(3L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10));
+        smallCartWise.setStackingGroup("cart");
+        Coupon largeCartWise = coupon(4L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 20));
+        largeCartWise.setStackingGroup("cart");
+        Coupon exclusive = coupon(5L, CouponType.CART_WISE, Map.of("threshold", 0, "discount", 30));
+        exclusive.setExclusive(true);
+
+        when(couponRepository.findActive(any())).thenReturn(
+                Arrays.asList(productWise, bxgy, smallCartWise, largeCartWise, exclusive));
+
+        // Item coupons first (20 + 10), then 20% of the 90 left; the exclusive coupon alone gives 36
+        CouponStack stack = couponService.getBestStack(cart);
+        assertEquals(List.of(2L, 1L, 4L), stack.getCoupons().stream().map(CouponDiscount::getCouponId).toList());
+        assertEquals(List.of(20.0, 10.0, 18.0), stack.getCoupons().stream().map(CouponDiscount::getDiscount).toList());
+        assertEquals(48.0, stack.getTotalDiscount());
+        assertEquals(72.0, stack.getTotalPrice());
+        assertEquals(120.0, cart.getTotalPrice());
+    }
+
+    @Test
+    public void testApplyCoupons_AccumulatesDiscountsInCents() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(101.01);
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2), cartItem(2L, 1.01, 1)));
+        Coupon tenPercent = coupon(1L, CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 10));
+        Coupon halfPrice = coupon(2L, CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 50));
+        Coupon halfPriceSmall = coupon(3L, CouponType.PRODUCT_WISE, Map.of("product_id", 2, "discount", 50));
+
+        when(couponRepository.findAllById(any())).thenReturn(Arrays.asList(tenPercent, halfPrice, halfPriceSmall));
+
+        couponService.applyCoupons(List.of(1L, 2L, 3L), cart);
+        // 10 off 100, then half of the 90 left; half of 1.01 rounds half-even to 0.50
+        assertEquals(55.0, cart.getItems().get(0).getTotalDiscount());
+        assertEquals(0.50, cart.getItems().get(1).getTotalDiscount());
+        assertEquals(45.51, cart.getTotalPrice());
+    }
+
+    @Test
+    public void testApplyCoupons_RejectsConflictingCoupons() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(120.0);
+        cart.setItems(Arrays.asList(cartItem(1L, 50.0, 2)));
+        Coupon first = coupon(1L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10));
+        first.setStackingGroup("cart");
+        Coupon second = coupon(2L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 20));
+        second.setStackingGroup("cart");
+
+        when(couponRepository.findAllById(any())).thenReturn(Arrays.asList(first, second));
+
+        assertThrows(InvalidCouponException.class, () -> couponService.applyCoupons(List.of(1L, 2L), cart));
+        assertEquals(120.0, cart.getTotalPrice());
+    }
+
+    @Test
+    public void testRedeemCoupon_EnforcesLimitsUnderConcurrency() throws Exception {
+        Coupon flashSale = coupon(7L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10));
+        flashSale.setMaxRedemptions(100);
+        flashSale.setMaxRedemptionsPerUser(3);
+
+        when(couponRepository.findById(7L)).thenReturn(Optional.of(flashSale));
+
+        // 50 users try 8 times each: at most 3 per user and 100 in total go through
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String userId = "user" + (i % 50);
+            results.add(executor.submit(() -> {
+                Cart cart = new Cart();
+                cart.setTotalPrice(100.0);
+                cart.setItems(List.of(cartItem(1L, 100.0, 1)));
+                try {
+                    couponService.redeemCoupon(7L, userId, cart);
+                    return cart.getTotalPrice() == 90.0;
+                } catch (RedemptionLimitException e) {
+                    return false;
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        long redeemed = 0;
+        for (Future<Boolean> result : results) {
+            redeemed += result.get() ? 1 : 0;
+        }
+        assertEquals(100, redeemed);
+
+        // One write for the coupon and one per user, however many redemptions there were
+        couponRedemptions.flush();
+        verify(couponRepository).addRedemptions(7L, 100L);
+        ArgumentCaptor<CouponRedemption> saved = ArgumentCaptor.forClass(CouponRedemption.class);
+        verify(redemptionRepository, atLeastOnce()).save(saved.capture());
+        assertEquals(100, saved.getAllValues().stream().mapToLong(CouponRedemption::getRedemptionCount).sum());
+        assertTrue(saved.getAllValues().stream().allMatch(redemption -> redemption.getRedemptionCount() <= 3));
+
+        couponRedemptions.flush();
+        verify(couponRepository, times(1)).addRedemptions(any(), anyLong());
+    }
+
+    @Test
+    public void testRedeemCoupon_CountsRedemptionsFlushedByOtherInstances() {
+        Coupon limited = coupon(8L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10));
+        limited.setMaxRedemptions(3);
+
+        when(couponRepository.findById(8L)).thenReturn(Optional.of(limited));
+
+        Cart cart = new Cart();
+        cart.setItems(List.of(cartItem(1L, 100.0, 1)));
+        couponService.redeemCoupon(8L, null, cart);
+
+        // Another instance flushed two redemptions, the budget is reloaded after the next flush
+        when(couponRepository.findRedemptionCount(8L)).thenReturn(Optional.of(3L));
+        couponRedemptions.flush();
+        Cart next = new Cart();
+        next.setItems(List.of(cartItem(1L, 100.0, 1)));
+        assertThrows(RedemptionLimitException.class, () -> couponService.redeemCoupon(8L, null, next));
+    }
+
+    @Test
+    public void testRedeemCoupon_ReloadsDuringReservationsKeepLimits() throws Exception {
+        Coupon flashSale = coupon(9L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10));
+        flashSale.setMaxRedemptions(150);
+        flashSale.setMaxRedemptionsPerUser(4);
+
+        // The database counts what the flushes write, and budgets reload from it after every flush
+        AtomicLong stored = new AtomicLong();
+        Map<CouponRedemption.Key, Long> storedByUser = new ConcurrentHashMap<>();
+        when(couponRepository.findById(9L)).thenReturn(Optional.of(flashSale));
+        when(couponRepository.findRedemptionCount(9L)).thenAnswer(invocation -> Optional.of(stored.get()));
+        when(couponRepository.addRedemptions(eq(9L), anyLong())).thenAnswer(invocation -> {
+            stored.addAndGet(invocation.getArgument(1));
+            return 1;
+        });
+        when(redemptionRepository.findById(any())).thenAnswer(invocation -> Optional.ofNullable(storedByUser.get(invocation.getArgument(0)))
+                .map(count -> new CouponRedemption(9L, ((CouponRedemption.Key) invocation.getArgument(0)).getUserId(), count)));
+        when(redemptionRepository.addRedemptions(eq(9L), anyString(), anyLong())).thenAnswer(invocation ->
+                storedByUser.computeIfPresent(new CouponRedemption.Key(9L, invocation.getArgument(1)),
+                        (key, count) -> count + (long) invocation.getArgument(2)) != null ? 1 : 0);
+        when(redemptionRepository.save(any())).thenAnswer(invocation -> {
+            CouponRedemption redemption = invocation.getArgument(0);
+            storedByUser.merge(new CouponRedemption.Key(redemption.getCouponId(), redemption.getUserId()),
+                    redemption.getRedemptionCount(), Long::sum);
+            return redemption;
+        });
+
+        // 50 users try 6 times each while flushes keep making the budgets stale
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String userId = "user" + (i % 50);
+            results.add(executor.submit(() -> {
+                Cart cart = new Cart();
+                cart.setItems(List.of(cartItem(1L, 100.0, 1)));
+                try {
+                    couponService.redeemCoupon(9L, userId, cart);
+                    return true;
+                } catch (RedemptionLimitException e) {
+                    return false;
+                }
+            }));
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            couponRedemptions.flush();
+        }
+        long redeemed = 0;
+        for (Future<Boolean> result : results) {
+            redeemed += result.get() ? 1 : 0;
+        }
+        couponRedemptions.flush();
+
+        assertEquals(150, redeemed);
+        assertEquals(150, stored.get());
+        assertEquals(150, storedByUser.values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(storedByUser.values().stream().allMatch(count -> count <= 4));
+    }
+
+    @Test
+    public void testGetCouponById_CachesHitsAndMisses() {
+        Coupon coupon = coupon(1L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10));
+        coupon.setVersion(0L);
+        when(couponRepository.findById(1L)).thenReturn(Optional.of(coupon));
+        when(couponRepository.findById(99L)).thenReturn(Optional.empty());
+        when(couponRepository.saveAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertSame(coupon, couponService.getCouponById(1L).orElseThrow());
+        assertSame(coupon, couponService.getCouponById(1L).orElseThrow());
+        assertTrue(couponService.getCouponById(99L).isEmpty());
+        assertTrue(couponService.getCouponById(99L).isEmpty());
+        verify(couponRepository, times(1)).findById(1L);
+        verify(couponRepository, times(1)).findById(99L);
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "coupons.byId").tag("result", "hit").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "coupons.byId").tag("result", "miss").functionCounter().count());
+
+        // An update drops the cached coupon, the next lookup reads it again
+        couponService.updateCoupon(1L, coupon(null, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 10)));
+        couponService.getCouponById(1L);
+        verify(couponRepository, times(3)).findById(1L);
+    }
+
+    @Test
+    public void testGetNextTiers_ClosestThresholdsFirst() {
+        Cart cart = new Cart();
+        cart.setTotalPrice(80.10);
+        cart.setItems(Arrays.asList(cartItem(1L, 40.05, 2)));
+        when(couponRepository.findActive(any())).thenReturn(Arrays.asList(
+                coupon(1L, CouponType.CART_WISE, Map.of("threshold", 50, "discount", 5)),
+                coupon(2L, CouponType.CART_WISE, Map.of("threshold", 200, "discount", 15)),
+                coupon(3L, CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10)),
+                coupon(4L, CouponType.CART_WISE, Map.of("threshold", 500, "discount", 20)),
+                coupon(5L, CouponType.PRODUCT_WISE, Map.of("product_id", 1, "discount", 50))));
+
+        List<CouponTier> tiers = couponService.getNextTiers(cart, 2);
+        assertEquals(List.of(3L, 2L), tiers.stream().map(CouponTier::getCouponId).toList());
+        assertEquals(19.90, tiers.get(0).getAmountToSpend());
+        assertEquals(119.90, tiers.get(1).getAmountToSpend());
+        assertEquals(10.0, tiers.get(0).getDiscount());
+    }
+
+    private static Coupon coupon(Long id, CouponType type, Map<String, Object> details) {
+        Coupon coupon = new Coupon();
+        coupon.setId(id);
+        coupon.setType(type);
+        coupon.setDetails(details);
+        return coupon;
+    }
+
+    private static Cart cart(CartItem... items) {
+        Cart cart = new Cart();
+        cart.setItems(new ArrayList<>(Arrays.asList(items)));
+        cart.setTotalPrice(cart.getItems().stream().mapToDouble(item -> item.getProduct().getPrice() * item.getQuantity()).sum());
+        return cart;
+    }
+
+    private static CartItem cartItem(long productId, double price, int quantity) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setPrice(price);
+        return new CartItem(product, quantity, 0);
+    }
+
+    // Clock moved forward by the test instead of by waiting
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
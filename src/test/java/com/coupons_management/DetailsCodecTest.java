@@ -0,0 +1,89 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.coupons_management.Service.DetailsCodec;
+import com.coupons_management.Service.JsonConverter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DetailsCodecTest {
+
+    private final JsonConverter jsonConverter = new JsonConverter();
+
+    @Test
+    public void testEveryLayoutRoundTripsToTheParsedJson() {
+        List<String> samples = List.of(
+                "{\"threshold\":100,\"discount\":10}",
+                "{\"threshold\":99.99,\"discount\":12.5}",
+                "{\"threshold\":10000000000,\"discount\":0}",
+                "{\"product_id\":300,\"discount\":20}",
+                "{\"product_id\":5000000000,\"discount\":7.25}",
+                "{\"buy_products\":[{\"product_id\":1,\"quantity\":3},{\"product_id\":2,\"quantity\":3}],"
+                        + "\"get_products\":[{\"product_id\":3,\"discount\":100},{\"product_id\":4,\"discount\":50.5}]}",
+                "{\"buy_products\":[{\"product_id\":1,\"quantity\":2}],"
+                        + "\"get_products\":[{\"product_id\":1,\"discount\":100,\"quantity\":2},{\"product_id\":4,\"discount\":50.5}],"
+                        + "\"repetition_limit\":3}",
+                "{\"buy_products\":[{\"product_id\":1,\"quantity\":2}],"
+                        + "\"get_products\":[{\"product_id\":1,\"discount\":100}],\"repetition_limit\":1}");
+        for (String json : samples) {
+            Map<String, Object> parsed = jsonConverter.convertToEntityAttribute(json);
+            byte[] bytes = DetailsCodec.encode(parsed);
+
+            assertTrue(bytes.length < json.length(), json);
+            assertEquals(parsed, DetailsCodec.decode(bytes), json);
+            assertEquals(parsed, DetailsCodec.lazy(bytes), json);
+            // Same number types as the JSON parser, so the API serializes them the same way
+            assertEquals(jsonConverter.convertToDatabaseColumn(parsed),
+                    jsonConverter.convertToDatabaseColumn(DetailsCodec.decode(bytes)), json);
+        }
+    }
+
+    @Test
+    public void testDetailsOutsideTheLayoutsAreKeptAsJson() {
+        List<Map<String, Object>> samples = List.of(
+                Map.of("threshold", 100, "discount", 10, "note", "spring sale"),
+                Map.of("product_id", "SKU-1", "discount", 10),
+                Map.of("product_id", -1, "discount", 10),
+                Map.of("discount", 10),
+                Map.of("buy_products", List.of(Map.of("product_id", 1)), "get_products", List.of()));
+        for (Map<String, Object> details : samples) {
+            byte[] bytes = DetailsCodec.encode(details);
+            assertEquals(0, bytes[1], details.toString()); // JSON layout
+            assertEquals(details, DetailsCodec.decode(bytes));
+        }
+    }
+
+    @Test
+    public void testStoredFormatOneStaysReadable() {
+        // Bytes as written by format 1; rows in the database must decode the same forever
+        byte[] cartWise = {1, 1, 3, 0x40, 0x59, 0, 0, 0, 0, 0, 0, 0x40, 0x24, 0, 0, 0, 0, 0, 0};
+        assertEquals(Map.of("threshold", 100, "discount", 10), DetailsCodec.decode(cartWise));
+
+        byte[] productWise = {1, 2, 0, (byte) 0xAC, 0x02, 0x40, 0x29, 0, 0, 0, 0, 0, 0};
+        assertEquals(Map.of("product_id", 300, "discount", 12.5), DetailsCodec.decode(productWise));
+
+        byte[] json = ("\u0001\u0000{\"discount\":5}").getBytes(StandardCharsets.UTF_8);
+        assertEquals(Map.of("discount", 5), DetailsCodec.decode(json));
+
+        assertThrows(IllegalArgumentException.class, () -> DetailsCodec.decode(new byte[]{2, 1}));
+        assertThrows(IllegalArgumentException.class, () -> DetailsCodec.decode(new byte[]{1, 1, 3, 0x40}));
+    }
+
+    @Test
+    public void testLazyDetailsAreReadOnlyAndReencodeToTheSameBytes() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("product_id", 7);
+        details.put("discount", 15);
+        byte[] bytes = DetailsCodec.encode(details);
+
+        Map<String, Object> lazy = DetailsCodec.lazy(bytes);
+        assertSame(bytes, DetailsCodec.encode(lazy));
+        assertEquals(7, lazy.get("product_id"));
+        assertThrows(UnsupportedOperationException.class, () -> lazy.put("discount", 20));
+    }
+}
@@ -0,0 +1,136 @@
+package com.coupons_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+// Throughput of /redeem-coupon/{id} with platform vs virtual request threads.
+// H2 stands in for MySQL, with a fixed latency added to every connection checkout to mimic the
+// network round trip during which a request thread is blocked. The coupon has a per-user limit and
+// every request comes from a new user, so each one loads that user's count from the database;
+// identical carts on /apply-coupon/{id} would be answered from the coupon and evaluation caches.
+// Run with: ./mvnw -Pload-test test
+@Tag("load")
+public class ExecutionModeLoadTest {
+
+    private static final long DB_LATENCY_MS = 100;
+    private static final int TOMCAT_THREADS = 10;
+    private static final int POOL_SIZE = 40;
+    private static final int CLIENTS = 100;
+    private static final int REQUESTS = 1_000;
+
+    private static final String CART = """
+            {"totalPrice":100.0,"items":[{"product":{"productId":1,"price":50.0},"quantity":2,"totalDiscount":0}]}""";
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModeLoadTest.class);
+
+    @Test
+    public void testPlatformVsVirtualThroughput() throws Exception {
+        double platform = measure(false);
+        double virtual = measure(true);
+        logger.info("Platform threads: {} requests/s, virtual threads: {} requests/s ({}x)",
+                Math.round(platform), Math.round(virtual), String.format("%.1f", virtual / platform));
+
+        // Ten platform threads cap the blocked requests in flight, virtual threads are only bounded by the pool
+        assertTrue(virtual > platform, "virtual " + virtual + " requests/s, platform " + platform + " requests/s");
+    }
+
+    private double measure(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CouponsManagementApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new LatencyInjector()))
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_THREADS,
+                        "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                        "spring.datasource.url=jdbc:h2:mem:load" + virtualThreads + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                        "spring.threads.virtual.enabled=" + virtualThreads)
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String base = "http://localhost:" + port + "/coupons";
+
+            HttpResponse<String> created = client.send(post(base, """
+                    {"type":"PRODUCT_WISE","details":{"product_id":1,"discount":10},"maxRedemptionsPerUser":1}"""),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, created.statusCode());
+            long couponId = Long.parseLong(created.body().replaceAll(".*\"id\":(\\d+).*", "$1"));
+            AtomicInteger users = new AtomicInteger();
+            IntFunction<HttpRequest> redeem = i -> post(base + "/redeem-coupon/" + couponId + "?userId=user" + users.incrementAndGet(), CART);
+
+            // Warm up, then measure. The first request runs alone: Hibernate builds a query plan inside a
+            // monitor, and a virtual thread waiting there for a connection would pin its carrier.
+            assertEquals(200, client.send(redeem.apply(0), HttpResponse.BodyHandlers.discarding()).statusCode());
+            run(client, redeem, REQUESTS / 4);
+            long start = System.nanoTime();
+            run(client, redeem, REQUESTS);
+            return REQUESTS / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private static void run(HttpClient client, IntFunction<HttpRequest> requests, int count) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Integer>> responses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                HttpRequest request = requests.apply(i);
+                responses.add(clients.submit(() -> client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()));
+            }
+            for (Future<Integer> response : responses) {
+                assertEquals(200, response.get());
+            }
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    private static HttpRequest post(String uri, String json) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    // Holds each checked-out connection for DB_LATENCY_MS before handing it over
+    private static class LatencyInjector implements BeanPostProcessor {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    Connection connection = super.getConnection();
+                    try {
+                        Thread.sleep(DB_LATENCY_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return connection;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.coupons_management.benchmark;
+
+import com.coupons_management.DTO.CouponRanking;
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Entity.Product;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Service.CartEvaluationCache;
+import com.coupons_management.Service.CouponCache;
+import com.coupons_management.Service.CouponCatalog;
+import com.coupons_management.Service.CouponMetrics;
+import com.coupons_management.Service.CouponRedemptions;
+import com.coupons_management.Service.CouponService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Throughput, latency and (with -prof gc) allocation of coupon matching and application.
+// Run with: ./mvnw -Pbenchmark test-compile exec:exec
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CouponEvaluationBenchmark {
+
+    private static final int PRODUCT_COUNT = 10_000;
+    private static final int CART_COUNT = 64; // carts rotated through, so one cart does not warm every branch
+
+    @Param({"1", "100", "10000", "100000"})
+    public int couponCount;
+
+    @Param({"MIXED", "CART_WISE", "PRODUCT_WISE", "BxGy"})
+    public String typeMix;
+
+    @Param({"5", "50", "500"})
+    public int cartSize;
+
+    private CouponService couponService;
+    private Cart[] carts;
+    private double[] cartPrices;
+    private long[] couponIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Coupon> coupons = new ArrayList<>(couponCount);
+        for (int i = 0; i < couponCount; i++) {
+            coupons.add(coupon(random, typeFor(i)));
+        }
+
+        InMemoryCouponRepository repository = new InMemoryCouponRepository(coupons);
+        CouponMetrics metrics = new CouponMetrics(new SimpleMeterRegistry());
+        CouponCatalog catalog = new CouponCatalog(repository, metrics);
+        // Redemptions are not benchmarked, their counters are never flushed
+        CouponRedemptions redemptions = new CouponRedemptions(repository, null, null);
+        CouponCache cache = new CouponCache(repository, metrics, 10_000, Duration.ofMinutes(10), Duration.ofSeconds(5));
+        couponService = new CouponService(repository, catalog,
+                event -> catalog.onCouponChanged((CouponChangedEvent) event), metrics, redemptions, cache,
+                new CartEvaluationCache(metrics, Duration.ZERO, 0)); // every call evaluates
+        catalog.getIndex(); // load outside the measurement
+
+        carts = new Cart[CART_COUNT];
+        cartPrices = new double[CART_COUNT];
+        for (int i = 0; i < CART_COUNT; i++) {
+            carts[i] = cart(random, cartSize);
+            cartPrices[i] = carts[i].getTotalPrice();
+        }
+        couponIds = coupons.stream().mapToLong(Coupon::getId).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        couponService = null;
+    }
+
+    @Benchmark
+    public List<Coupon> getApplicableCoupons() {
+        return couponService.getApplicableCoupons(carts[nextCart()]);
+    }
+
+    @Benchmark
+    public Cart applyCoupon() {
+        int cart = nextCart();
+        carts[cart].setTotalPrice(cartPrices[cart]); // apply lowers the total, start from the posted one
+        return couponService.applyCoupon(couponIds[next % couponIds.length], carts[cart]);
+    }
+
+    @Benchmark
+    public CouponRanking rankCoupons() {
+        return couponService.rankCoupons(carts[nextCart()]);
+    }
+
+    private int nextCart() {
+        next++;
+        return next & (CART_COUNT - 1);
+    }
+
+    private CouponType typeFor(int i) {
+        if (!"MIXED".equals(typeMix)) {
+            return CouponType.valueOf(typeMix);
+        }
+        return CouponType.values()[i % CouponType.values().length];
+    }
+
+    private static Coupon coupon(Random random, CouponType type) {
+        Map<String, Object> details = new HashMap<>();
+        switch (type) {
+            case CART_WISE:
+                details.put("threshold", random.nextInt(2_000));
+                details.put("discount", 5 + random.nextInt(20));
+                break;
+            case PRODUCT_WISE:
+                details.put("product_id", random.nextInt(PRODUCT_COUNT));
+                details.put("discount", 5 + random.nextInt(50));
+                break;
+            case BxGy:
+                details.put("buy_products", List.of(
+                        Map.of("product_id", random.nextInt(PRODUCT_COUNT), "quantity", 1 + random.nextInt(3)),
+                        Map.of("product_id", random.nextInt(PRODUCT_COUNT), "quantity", 1 + random.nextInt(3))));
+                details.put("get_products", List.of(Map.of("product_id", random.nextInt(PRODUCT_COUNT), "discount", 100)));
+                break;
+        }
+        Coupon coupon = new Coupon();
+        coupon.setType(type);
+        coupon.setDetails(details);
+        return coupon;
+    }
+
+    private static Cart cart(Random random, int size) {
+        List<CartItem> items = new ArrayList<>(size);
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            Product product = new Product();
+            product.setProductId(random.nextInt(PRODUCT_COUNT));
+            product.setPrice(1 + random.nextInt(200));
+            CartItem item = new CartItem(product, 1 + random.nextInt(5), 0);
+            items.add(item);
+            total += product.getPrice() * item.getQuantity();
+        }
+        Cart cart = new Cart();
+        cart.setItems(items);
+        cart.setTotalPrice(total);
+        return cart;
+    }
+}
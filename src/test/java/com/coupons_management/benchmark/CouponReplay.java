@@ -0,0 +1,374 @@
+package com.coupons_management.benchmark;
+
+import com.coupons_management.Entity.Cart;
+import com.coupons_management.Entity.CartItem;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Event.CouponChangedEvent;
+import com.coupons_management.Service.CartEvaluationCache;
+import com.coupons_management.Service.CatalogSnapshot;
+import com.coupons_management.Service.CouponCache;
+import com.coupons_management.Service.CouponCatalog;
+import com.coupons_management.Service.CouponMetrics;
+import com.coupons_management.Service.CouponRedemptions;
+import com.coupons_management.Service.CouponService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+// Offline replay of recorded carts against a coupon catalog, to see how evaluation latency moves
+// with the catalog before it reaches production.
+// Carts are the JSON bodies posted to /coupons/applicable-coupons, as a JSON array or one per line.
+// The catalog is a /coupons/export dump (array or NDJSON) or a catalog snapshot file. Everything runs
+// in memory with the same service wiring as CouponEvaluationBenchmark, no database is involved.
+// Each pass runs getApplicableCoupons on every cart, then applyCoupon once for every coupon found
+// applicable to it, on a fixed number of threads; the earlier passes warm up the JIT and caches and
+// the last one is reported.
+// Run with: mvn -Preplay test-compile exec:exec -Dreplay.carts=carts.ndjson -Dreplay.catalog=coupons.ndjson
+public class CouponReplay {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final CouponService couponService;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final int threads;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final int couponCount;
+
+    public CouponReplay(Collection<Coupon> coupons, int threads) {
+        InMemoryCouponRepository repository = new InMemoryCouponRepository(coupons);
+        CouponMetrics metrics = new CouponMetrics(registry);
+        CouponCatalog catalog = new CouponCatalog(repository, metrics);
+        // Redemptions are not replayed, their counters are never flushed
+        CouponRedemptions redemptions = new CouponRedemptions(repository, null, null);
+        CouponCache cache = new CouponCache(repository, metrics, Math.max(10_000, coupons.size()),
+                Duration.ofMinutes(10), Duration.ofSeconds(5));
+        couponService = new CouponService(repository, catalog,
+                event -> catalog.onCouponChanged((CouponChangedEvent) event), metrics, redemptions, cache,
+                new CartEvaluationCache(metrics, Duration.ZERO, 0)); // every call evaluates
+        catalog.getIndex(); // load outside the measurement
+        this.couponCount = coupons.size();
+        this.threads = threads;
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threadBean = bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled() ? bean : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        Path cartsPath = Path.of(required(options, "carts"));
+        Path catalogPath = Path.of(required(options, "catalog"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int passes = Integer.parseInt(options.getOrDefault("passes", "3"));
+
+        ObjectMapper objectMapper = objectMapper();
+        List<Coupon> coupons = readCatalog(catalogPath, objectMapper);
+        List<Cart> carts = readCarts(cartsPath, objectMapper);
+        System.out.printf("Replaying %d carts against %d coupons on %d threads, %d passes%n",
+                carts.size(), coupons.size(), threads, passes);
+
+        CouponReplay replay = new CouponReplay(coupons, threads);
+        Result result = null;
+        for (int pass = 1; pass <= passes; pass++) {
+            result = replay.run(carts);
+            System.out.printf("pass %d: %.0f carts/s%n", pass, result.getApplicable().getThroughput());
+        }
+        if (result != null) {
+            result.print(System.out);
+        }
+    }
+
+    // Replay every cart once, see the class comment
+    public Result run(List<Cart> carts) throws InterruptedException {
+        Map<CouponType, double[]> before = evaluationCounts();
+
+        int cartCount = carts.size();
+        Operation applicable = new Operation("getApplicableCoupons", cartCount);
+        List<List<Coupon>> matches = new ArrayList<>(Collections.nCopies(cartCount, List.of()));
+        applicable.wallNanos = parallel(cartCount, i -> {
+            List<Coupon> found = measure(applicable, i, () -> couponService.getApplicableCoupons(carts.get(i)));
+            if (found != null) {
+                matches.set(i, found);
+            }
+        });
+
+        // Every (cart, applicable coupon) pair, each applied to its own copy of the cart
+        List<long[]> pairs = new ArrayList<>();
+        for (int i = 0; i < cartCount; i++) {
+            for (Coupon coupon : matches.get(i)) {
+                pairs.add(new long[]{i, coupon.getId()});
+            }
+        }
+        Operation apply = new Operation("applyCoupon", pairs.size());
+        apply.wallNanos = parallel(pairs.size(), i -> {
+            Cart cart = copy(carts.get((int) pairs.get(i)[0]));
+            measure(apply, i, () -> couponService.applyCoupon(pairs.get(i)[1], cart));
+        });
+
+        Map<CouponType, double[]> after = evaluationCounts();
+        Map<CouponType, double[]> evaluated = new EnumMap<>(CouponType.class);
+        for (CouponType type : CouponType.values()) {
+            evaluated.put(type, new double[]{after.get(type)[0] - before.get(type)[0], after.get(type)[1] - before.get(type)[1]});
+        }
+        int cartsMatched = (int) matches.stream().filter(found -> !found.isEmpty()).count();
+        return new Result(couponCount, threads, cartCount, cartsMatched, pairs.size(), applicable, apply, evaluated);
+    }
+
+    // Time one call and count what it allocates; failed calls are counted and left out of the latencies
+    private <T> T measure(Operation operation, int index, Callable<T> call) {
+        long allocatedBefore = threadBean != null ? threadBean.getCurrentThreadAllocatedBytes() : 0;
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            operation.latencies[index] = System.nanoTime() - start;
+            return result;
+        } catch (Exception e) {
+            operation.latencies[index] = -1;
+            return null;
+        } finally {
+            if (threadBean != null) {
+                operation.allocated[index] = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            }
+        }
+    }
+
+    // Run the task for every index on the replay threads, returns the wall-clock nanos it took
+    private long parallel(int count, IntConsumer task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger next = new AtomicInteger();
+            List<Callable<Void>> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                workers.add(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        task.accept(i);
+                    }
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> worker : executor.invokeAll(workers)) {
+                worker.get();
+            }
+            return System.nanoTime() - start;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<CouponType, double[]> evaluationCounts() {
+        Map<CouponType, double[]> counts = new EnumMap<>(CouponType.class);
+        for (CouponType type : CouponType.values()) {
+            counts.put(type, new double[]{
+                    registry.get("coupons.evaluation.scanned").tag("type", type.name()).counter().count(),
+                    registry.get("coupons.evaluation.matched").tag("type", type.name()).counter().count()});
+        }
+        return counts;
+    }
+
+    // applyCoupon writes its discounts to the cart, so each call gets the cart as it was posted
+    private static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.setTotalPrice(cart.getTotalPrice());
+        if (cart.getItems() != null) {
+            List<CartItem> items = new ArrayList<>(cart.getItems().size());
+            for (CartItem item : cart.getItems()) {
+                items.add(new CartItem(item.getProduct(), item.getQuantity(), item.getTotalDiscount()));
+            }
+            copy.setItems(items);
+        }
+        return copy;
+    }
+
+    // Input
+
+    // Jackson configured as Spring Boot configures it for the controllers
+    static ObjectMapper objectMapper() {
+        return new Jackson2ObjectMapperBuilder().build();
+    }
+
+    public static List<Cart> readCarts(Path path, ObjectMapper objectMapper) throws IOException {
+        return readValues(path, objectMapper, Cart.class);
+    }
+
+    // An export dump, or a catalog snapshot when the file does not start with JSON
+    public static List<Coupon> readCatalog(Path path, ObjectMapper objectMapper) throws IOException {
+        int first;
+        try (InputStream input = Files.newInputStream(path)) {
+            do {
+                first = input.read();
+            } while (first != -1 && Character.isWhitespace(first));
+        }
+        if (first == '[' || first == '{') {
+            return readValues(path, objectMapper, Coupon.class);
+        }
+        return CatalogSnapshot.read(path).getCoupons();
+    }
+
+    // A JSON array or newline-delimited values; a top-level array is unwrapped by the iterator
+    private static <T> List<T> readValues(Path path, ObjectMapper objectMapper, Class<T> type) throws IOException {
+        try (MappingIterator<T> values = objectMapper.readerFor(type).readValues(path.toFile())) {
+            return values.readAll();
+        }
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing --" + name + "=<file>");
+        }
+        return value;
+    }
+
+    // Output
+
+    // Latencies and allocation of one operation over a pass
+    public static final class Operation {
+
+        private final String name;
+        private final long[] latencies; // nanos per call, -1 for a failed call
+        private final long[] allocated; // bytes per call, all 0 when the JVM cannot count them
+        private long wallNanos;
+
+        private Operation(String name, int count) {
+            this.name = name;
+            this.latencies = new long[count];
+            this.allocated = new long[count];
+        }
+
+        public int getCount() {
+            return latencies.length;
+        }
+
+        public int getErrors() {
+            return (int) Arrays.stream(latencies).filter(latency -> latency < 0).count();
+        }
+
+        // Calls per second of wall-clock time over all threads
+        public double getThroughput() {
+            return wallNanos > 0 ? latencies.length * 1e9 / wallNanos : 0;
+        }
+
+        // Latency at the given percentile in microseconds, nearest rank over the successful calls
+        public double getPercentile(double percentile) {
+            long[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.min(sorted.length, Math.max(1, rank)) - 1] / 1e3;
+        }
+
+        public double getAllocatedPerCall() {
+            return latencies.length > 0 ? (double) Arrays.stream(allocated).sum() / latencies.length : 0;
+        }
+
+        void print(PrintStream out) {
+            out.printf("%-21s %8d %7d %11.0f", name, getCount(), getErrors(), getThroughput());
+            for (double percentile : PERCENTILES) {
+                out.printf(" %9.1f", getPercentile(percentile));
+            }
+            out.printf(" %9.1f %12.0f%n", getPercentile(100), getAllocatedPerCall());
+        }
+    }
+
+    public static final class Result {
+
+        private final int couponCount;
+        private final int threads;
+        private final int cartCount;
+        private final int cartsMatched;
+        private final int matchCount;
+        private final Operation applicable;
+        private final Operation apply;
+        private final Map<CouponType, double[]> evaluated; // scanned and matched rules per type
+
+        private Result(int couponCount, int threads, int cartCount, int cartsMatched, int matchCount,
+                       Operation applicable, Operation apply, Map<CouponType, double[]> evaluated) {
+            this.couponCount = couponCount;
+            this.threads = threads;
+            this.cartCount = cartCount;
+            this.cartsMatched = cartsMatched;
+            this.matchCount = matchCount;
+            this.applicable = applicable;
+            this.apply = apply;
+            this.evaluated = evaluated;
+        }
+
+        public Operation getApplicable() {
+            return applicable;
+        }
+
+        public Operation getApply() {
+            return apply;
+        }
+
+        public int getCartsMatched() {
+            return cartsMatched;
+        }
+
+        // Applicable coupons over all carts
+        public int getMatchCount() {
+            return matchCount;
+        }
+
+        public double getScanned(CouponType type) {
+            return evaluated.get(type)[0];
+        }
+
+        public double getMatched(CouponType type) {
+            return evaluated.get(type)[1];
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%n%d carts, %d coupons, %d threads%n", cartCount, couponCount, threads);
+            out.printf("%-21s %8s %7s %11s %9s %9s %9s %9s %9s %12s%n",
+                    "operation", "calls", "errors", "calls/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "bytes/call");
+            applicable.print(out);
+            apply.print(out);
+
+            out.printf("%ncarts with a coupon: %d of %d (%.1f%%), %.2f applicable coupons per cart%n",
+                    cartsMatched, cartCount, cartCount > 0 ? 100.0 * cartsMatched / cartCount : 0,
+                    cartCount > 0 ? (double) matchCount / cartCount : 0);
+            out.printf("%-13s %14s %14s%n", "type", "scanned/cart", "matched/cart");
+            for (CouponType type : CouponType.values()) {
+                out.printf("%-13s %14.2f %14.2f%n", type, perCart(getScanned(type)), perCart(getMatched(type)));
+            }
+        }
+
+        private double perCart(double count) {
+            return cartCount > 0 ? count / cartCount : 0;
+        }
+    }
+}
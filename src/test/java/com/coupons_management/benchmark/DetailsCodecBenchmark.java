@@ -0,0 +1,58 @@
+package com.coupons_management.benchmark;
+
+import com.coupons_management.Service.DetailsCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cost of hydrating the details column of one coupon: parsing the JSON text against decoding the binary layout.
+// Both bypass the converters' caches, so every call measures a row that was not seen before.
+// Run with: ./mvnw -Pbenchmark -Djmh.includes=DetailsCodecBenchmark test-compile exec:exec
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DetailsCodecBenchmark {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> DETAILS_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"CART_WISE", "PRODUCT_WISE", "BxGy"})
+    public String type;
+
+    private String json;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        json = switch (type) {
+            case "CART_WISE" -> "{\"threshold\":100,\"discount\":10}";
+            case "PRODUCT_WISE" -> "{\"product_id\":123456,\"discount\":20}";
+            default -> "{\"buy_products\":[{\"product_id\":1001,\"quantity\":3},{\"product_id\":1002,\"quantity\":2}],"
+                    + "\"get_products\":[{\"product_id\":2001,\"discount\":100},{\"product_id\":2002,\"discount\":50}]}";
+        };
+        binary = DetailsCodec.encode(objectMapper.readValue(json, DETAILS_TYPE));
+    }
+
+    @Benchmark
+    public Map<String, Object> parseJson() throws Exception {
+        return objectMapper.readValue(json, DETAILS_TYPE);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeBinary() {
+        return DetailsCodec.decode(binary);
+    }
+
+    // Loading a row whose details are never read
+    @Benchmark
+    public Map<String, Object> loadLazily() {
+        return DetailsCodec.lazy(binary);
+    }
+}
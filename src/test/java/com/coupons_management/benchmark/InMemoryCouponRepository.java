@@ -0,0 +1,452 @@
+package com.coupons_management.benchmark;
+
+import com.coupons_management.DTO.CouponSummary;
+import com.coupons_management.Entity.Coupon;
+import com.coupons_management.Enum.CouponType;
+import com.coupons_management.Repository.CouponRepository;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.*;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.beans.PropertyDescriptor;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Map-backed CouponRepository stand-in, so the service can be measured without a database.
+// Every operation works on the map; query-by-example and sorting read the coupon properties
+// through their getters, with the same matching rules as the JPA repository.
+public class InMemoryCouponRepository implements CouponRepository {
+
+    private final NavigableMap<Long, Coupon> coupons = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public InMemoryCouponRepository(Collection<Coupon> initialCoupons) {
+        initialCoupons.forEach(this::save);
+    }
+
+    @Override
+    public List<Coupon> findActive(LocalDateTime now) {
+        return coupons.values().stream()
+                .filter(c -> c.getExpirationDate() == null || !c.getExpirationDate().isBefore(now))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Coupon> findActiveByType(CouponType type, LocalDateTime now) {
+        return findActive(now).stream().filter(c -> c.getType() == type).collect(Collectors.toList());
+    }
+
+    @Override
+    public Slice<Coupon> findAllBy(Pageable pageable) {
+        List<Coupon> content = coupons.values().stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+        return new SliceImpl<>(content, pageable, pageable.getOffset() + content.size() < coupons.size());
+    }
+
+    @Override
+    public Stream<Coupon> streamAll() {
+        return new ArrayList<>(coupons.values()).stream();
+    }
+
+    @Override
+    public List<CouponSummary> findAllSummaries() {
+        return coupons.values().stream().map(InMemoryCouponRepository::summary).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<CouponSummary> findActiveSummaries(CouponType type, LocalDateTime now) {
+        return findActive(now).stream()
+                .filter(c -> type == null || c.getType() == type)
+                .map(InMemoryCouponRepository::summary)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int addRedemptions(Long id, long count) {
+        Coupon coupon = coupons.get(id);
+        if (coupon == null) {
+            return 0;
+        }
+        coupon.setRedemptionCount(coupon.getRedemptionCount() + count);
+        return 1;
+    }
+
+    @Override
+    public Optional<Long> findRedemptionCount(Long id) {
+        return Optional.ofNullable(coupons.get(id)).map(Coupon::getRedemptionCount);
+    }
+
+    // Coupons are held as objects, there is no JSON column to migrate
+    @Override
+    public List<Coupon> findByLegacyDetailsIsNotNullAndIdGreaterThanOrderById(Long afterId, Pageable pageable) {
+        return List.of();
+    }
+
+    @Override
+    public int migrateDetails(Long id, byte[] details) {
+        return 0;
+    }
+
+    private static CouponSummary summary(Coupon coupon) {
+        return new CouponSummary(coupon.getId(), coupon.getType(), coupon.getExpirationDate());
+    }
+
+    @Override
+    public <S extends Coupon> S save(S coupon) {
+        if (coupon.getId() == null) {
+            coupon.setId(sequence.incrementAndGet());
+            coupon.setVersion(0L);
+        } else {
+            sequence.accumulateAndGet(coupon.getId(), Math::max);
+            coupon.setVersion(coupon.getVersion() == null ? 0L : coupon.getVersion() + 1);
+        }
+        coupons.put(coupon.getId(), coupon);
+        return coupon;
+    }
+
+    @Override
+    public <S extends Coupon> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(entity -> saved.add(save(entity)));
+        return saved;
+    }
+
+    @Override
+    public <S extends Coupon> S saveAndFlush(S entity) {
+        return save(entity);
+    }
+
+    @Override
+    public <S extends Coupon> List<S> saveAllAndFlush(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public Optional<Coupon> findById(Long id) {
+        return Optional.ofNullable(coupons.get(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return coupons.containsKey(id);
+    }
+
+    @Override
+    public List<Coupon> findAll() {
+        return new ArrayList<>(coupons.values());
+    }
+
+    @Override
+    public List<Coupon> findAllById(Iterable<Long> ids) {
+        List<Coupon> found = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public long count() {
+        return coupons.size();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        coupons.remove(id);
+    }
+
+    @Override
+    public void delete(Coupon entity) {
+        coupons.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Long> ids) {
+        ids.forEach(coupons::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Coupon> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        coupons.clear();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void deleteAllInBatch(Iterable<Coupon> entities) {
+        deleteAll(entities);
+    }
+
+    @Override
+    public void deleteAllByIdInBatch(Iterable<Long> ids) {
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAllInBatch() {
+        deleteAll();
+    }
+
+    @Override
+    public Coupon getOne(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    public Coupon getById(Long id) {
+        return getReferenceById(id);
+    }
+
+    @Override
+    public Coupon getReferenceById(Long id) {
+        return findById(id).orElseThrow();
+    }
+
+    @Override
+    public List<Coupon> findAll(Sort sort) {
+        return query(c -> true).sortBy(sort).all();
+    }
+
+    @Override
+    public Page<Coupon> findAll(Pageable pageable) {
+        return query(c -> true).page(pageable);
+    }
+
+    @Override
+    public <S extends Coupon> Optional<S> findOne(Example<S> example) {
+        return query(example).one();
+    }
+
+    @Override
+    public <S extends Coupon> List<S> findAll(Example<S> example) {
+        return query(example).all();
+    }
+
+    @Override
+    public <S extends Coupon> List<S> findAll(Example<S> example, Sort sort) {
+        return query(example).sortBy(sort).all();
+    }
+
+    @Override
+    public <S extends Coupon> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return query(example).page(pageable);
+    }
+
+    @Override
+    public <S extends Coupon> long count(Example<S> example) {
+        return query(example).count();
+    }
+
+    @Override
+    public <S extends Coupon> boolean exists(Example<S> example) {
+        return query(example).exists();
+    }
+
+    @Override
+    public <S extends Coupon, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        return queryFunction.apply(query(example));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S extends Coupon> Query<S> query(Predicate<Coupon> filter) {
+        List<S> matches = new ArrayList<>();
+        for (Coupon coupon : coupons.values()) {
+            if (filter.test(coupon)) {
+                matches.add((S) coupon);
+            }
+        }
+        return new Query<>(matches, Sort.unsorted(), Integer.MAX_VALUE, coupon -> (S) coupon);
+    }
+
+    private <S extends Coupon> Query<S> query(Example<S> example) {
+        ExampleMatcher matcher = example.getMatcher();
+        BeanWrapper probe = new BeanWrapperImpl(example.getProbe());
+        List<Predicate<Coupon>> conditions = new ArrayList<>();
+        for (PropertyDescriptor descriptor : probe.getPropertyDescriptors()) {
+            String path = descriptor.getName();
+            if (descriptor.getReadMethod() == null || path.equals("class") || matcher.isIgnoredPath(path)) {
+                continue;
+            }
+            Object expected = probe.getPropertyValue(path);
+            ExampleMatcher.PropertySpecifier specifier = matcher.getPropertySpecifiers().getForPath(path);
+            if (specifier != null) {
+                expected = specifier.transformValue(Optional.ofNullable(expected)).orElse(null);
+            }
+            if (expected == null && matcher.getNullHandler() == ExampleMatcher.NullHandler.IGNORE) {
+                continue;
+            }
+            Object value = expected;
+            boolean ignoreCase = specifier != null && specifier.getIgnoreCase() != null
+                    ? specifier.getIgnoreCase() : matcher.isIgnoreCaseEnabled();
+            ExampleMatcher.StringMatcher stringMatcher = specifier != null && specifier.getStringMatcher() != null
+                    ? specifier.getStringMatcher() : matcher.getDefaultStringMatcher();
+            conditions.add(coupon -> matches(new BeanWrapperImpl(coupon).getPropertyValue(path), value, stringMatcher, ignoreCase));
+        }
+        Predicate<Coupon> filter = coupon -> example.getProbeType().isInstance(coupon) && (matcher.isAllMatching()
+                ? conditions.stream().allMatch(condition -> condition.test(coupon))
+                : conditions.isEmpty() || conditions.stream().anyMatch(condition -> condition.test(coupon)));
+        return query(filter);
+    }
+
+    private static boolean matches(Object actual, Object expected, ExampleMatcher.StringMatcher stringMatcher, boolean ignoreCase) {
+        if (!(actual instanceof String text) || !(expected instanceof String pattern)) {
+            return Objects.equals(actual, expected);
+        }
+        if (ignoreCase) {
+            text = text.toLowerCase(Locale.ROOT);
+            pattern = pattern.toLowerCase(Locale.ROOT);
+        }
+        return switch (stringMatcher) {
+            case DEFAULT, EXACT -> text.equals(pattern);
+            case STARTING -> text.startsWith(pattern);
+            case ENDING -> text.endsWith(pattern);
+            case CONTAINING -> text.contains(pattern);
+            case REGEX -> text.matches(pattern);
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Comparator<T> comparator(Sort sort) {
+        Comparator<T> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Comparable> values = order.getNullHandling() == Sort.NullHandling.NULLS_LAST
+                    ? Comparator.nullsLast(Comparator.naturalOrder())
+                    : Comparator.nullsFirst(Comparator.naturalOrder());
+            Comparator<T> byProperty = Comparator.comparing(element -> {
+                Object value = new BeanWrapperImpl(element).getPropertyValue(order.getProperty());
+                return order.isIgnoreCase() && value instanceof String text ? text.toLowerCase(Locale.ROOT) : (Comparable) value;
+            }, values);
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+
+    // Fluent query over a snapshot of the matching coupons, in id order unless sorted
+    private static final class Query<T> implements FluentQuery.FetchableFluentQuery<T> {
+
+        private static final ProjectionFactory projections = new SpelAwareProxyProjectionFactory();
+
+        private final List<? extends Coupon> matches;
+        private final Sort sort;
+        private final int limit;
+        private final Function<Object, T> mapper;
+
+        private Query(List<? extends Coupon> matches, Sort sort, int limit, Function<Object, T> mapper) {
+            this.matches = matches;
+            this.sort = sort;
+            this.limit = limit;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public FetchableFluentQuery<T> sortBy(Sort sort) {
+            return new Query<>(matches, this.sort.and(sort), limit, mapper);
+        }
+
+        @Override
+        public FetchableFluentQuery<T> limit(int limit) {
+            return new Query<>(matches, sort, limit, mapper);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R> FetchableFluentQuery<R> as(Class<R> resultType) {
+            if (resultType.isAssignableFrom(Coupon.class)) {
+                return new Query<>(matches, sort, limit, coupon -> (R) coupon);
+            }
+            if (resultType.isInterface()) {
+                return new Query<>(matches, sort, limit, coupon -> projections.createProjection(resultType, coupon));
+            }
+            throw new IllegalArgumentException("Cannot project coupons to " + resultType.getName());
+        }
+
+        // Coupons are held whole, every property is already loaded
+        @Override
+        public FetchableFluentQuery<T> project(Collection<String> properties) {
+            return this;
+        }
+
+        @Override
+        public T oneValue() {
+            List<T> results = limited(2).toList();
+            if (results.size() > 1) {
+                throw new IncorrectResultSizeDataAccessException(1, results.size());
+            }
+            return results.isEmpty() ? null : results.get(0);
+        }
+
+        @Override
+        public T firstValue() {
+            return limited(1).findFirst().orElse(null);
+        }
+
+        @Override
+        public List<T> all() {
+            return stream().toList();
+        }
+
+        @Override
+        public Page<T> page(Pageable pageable) {
+            if (pageable.isUnpaged()) {
+                return new PageImpl<>(all());
+            }
+            List<T> content = sortBy(pageable.getSort()).stream()
+                    .skip(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .toList();
+            return new PageImpl<>(content, pageable, Math.min(matches.size(), limit));
+        }
+
+        @Override
+        public Window<T> scroll(ScrollPosition position) {
+            if (!(position instanceof OffsetScrollPosition offset)) {
+                throw new IllegalArgumentException("Only offset scrolling is supported in memory");
+            }
+            long start = offset.isInitial() ? 0 : offset.getOffset() + 1;
+            int size = limit == Integer.MAX_VALUE ? matches.size() : limit;
+            List<T> content = new Query<T>(matches, sort, Integer.MAX_VALUE, mapper).stream()
+                    .skip(start)
+                    .limit(size + 1L)
+                    .toList();
+            boolean hasNext = content.size() > size;
+            return Window.from(hasNext ? content.subList(0, size) : content, index -> ScrollPosition.offset(start + index), hasNext);
+        }
+
+        @Override
+        public Stream<T> stream() {
+            return limited(limit);
+        }
+
+        @Override
+        public long count() {
+            return Math.min(matches.size(), limit);
+        }
+
+        @Override
+        public boolean exists() {
+            return !matches.isEmpty() && limit > 0;
+        }
+
+        private Stream<T> limited(int maxSize) {
+            Stream<? extends Coupon> sorted = sort.isSorted() ? matches.stream().sorted(comparator(sort)) : matches.stream();
+            return sorted.limit(Math.min(maxSize, limit)).map(mapper);
+        }
+    }
+}